@@ -0,0 +1,13 @@
+package lib.gintec_rdl.network_state;
+
+import android.net.Network;
+
+import lib.gintec_rdl.network_state.core.LinkCapabilities;
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Callback for network capability changes
+ */
+public interface CapabilitiesCallback {
+    void action(NetworkSpec networkSpec, Network network, LinkCapabilities capabilities);
+}
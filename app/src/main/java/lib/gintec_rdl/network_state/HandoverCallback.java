@@ -0,0 +1,13 @@
+package lib.gintec_rdl.network_state;
+
+import android.net.Network;
+
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Callback moving long-lived work, e.g streams, from a losing network to its replacement. It
+ * should complete within {@code budgetMillis}, counted from when the handover was scheduled.
+ */
+public interface HandoverCallback {
+    void action(NetworkSpec networkSpec, Network losing, Network replacement, long budgetMillis);
+}
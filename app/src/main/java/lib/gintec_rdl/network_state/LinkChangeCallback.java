@@ -0,0 +1,13 @@
+package lib.gintec_rdl.network_state;
+
+import android.net.Network;
+
+import lib.gintec_rdl.network_state.network.LinkChange;
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Callback for network link property changes
+ */
+public interface LinkChangeCallback {
+    void action(NetworkSpec networkSpec, Network network, LinkChange change);
+}
@@ -0,0 +1,13 @@
+package lib.gintec_rdl.network_state;
+
+import android.net.Network;
+
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Callback for a network about to be lost, with its time to live and the network to move to,
+ * null if none is known yet
+ */
+public interface LosingCallback {
+    void action(NetworkSpec networkSpec, Network network, int maxMsToLive, Network replacement);
+}
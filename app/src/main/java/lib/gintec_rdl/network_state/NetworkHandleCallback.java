@@ -0,0 +1,12 @@
+package lib.gintec_rdl.network_state;
+
+import android.net.Network;
+
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Callback for events about one specific network
+ */
+public interface NetworkHandleCallback {
+    void action(NetworkSpec networkSpec, Network network);
+}
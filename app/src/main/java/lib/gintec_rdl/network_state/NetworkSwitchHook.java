@@ -0,0 +1,20 @@
+package lib.gintec_rdl.network_state;
+
+import lib.gintec_rdl.network_state.network.NetworkSnapshot;
+import lib.gintec_rdl.network_state.network.NetworkSpec;
+
+/**
+ * Hook run when the network a spec's traffic goes over changes, e.g to evict pooled
+ * connections bound to the previous network
+ */
+public interface NetworkSwitchHook {
+    /**
+     * Called synchronously on the listener thread, before the user callbacks of the new state
+     * are dispatched. Must not block.
+     *
+     * @param networkSpec The spec
+     * @param previous    Last available state, on the previous network
+     * @param current     New available state
+     */
+    void onNetworkSwitch(NetworkSpec networkSpec, NetworkSnapshot previous, NetworkSnapshot current);
+}
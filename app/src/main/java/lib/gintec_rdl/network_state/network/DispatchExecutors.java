@@ -0,0 +1,93 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+
+/**
+ * <p>Executors that {@link NetworkSpec} callbacks can be dispatched on.</p>
+ *
+ * @see NetworkSpec.Builder#dispatchOn(Executor)
+ */
+public final class DispatchExecutors {
+    private static final Executor DIRECT = Runnable::run;
+
+    private static volatile Executor mainThread;
+    private static volatile Executor sharedBackground;
+    private static volatile Looper backgroundLooper;
+
+    private DispatchExecutors() {
+    }
+
+    /**
+     * @return Executor posting to the main (U.I) thread
+     */
+    public static Executor mainThread() {
+        if (mainThread == null) {
+            synchronized (DispatchExecutors.class) {
+                if (mainThread == null) {
+                    mainThread = looper(Looper.getMainLooper());
+                }
+            }
+        }
+        return mainThread;
+    }
+
+    /**
+     * <p>Executor backed by a single background thread shared by every spec using it.</p>
+     * <p>Callbacks run in order, one at a time, so they should not block for long.</p>
+     *
+     * @return Shared background executor
+     */
+    public static Executor sharedBackground() {
+        if (sharedBackground == null) {
+            synchronized (DispatchExecutors.class) {
+                if (sharedBackground == null) {
+                    sharedBackground = looper(backgroundLooper());
+                }
+            }
+        }
+        return sharedBackground;
+    }
+
+    /**
+     * @return Looper of the library's shared background thread, started on first use
+     */
+    static Looper backgroundLooper() {
+        if (backgroundLooper == null) {
+            synchronized (DispatchExecutors.class) {
+                if (backgroundLooper == null) {
+                    final HandlerThread thread = new HandlerThread("NetworkState-dispatch",
+                        Process.THREAD_PRIORITY_BACKGROUND);
+                    thread.start();
+                    backgroundLooper = thread.getLooper();
+                }
+            }
+        }
+        return backgroundLooper;
+    }
+
+    /**
+     * <p>Executor running callbacks directly on the thread that received the event, i.e the
+     * connectivity callback thread for the v21 API and the receiver thread for the legacy API.</p>
+     * <p>Callbacks must be thread safe and must not block.</p>
+     *
+     * @return Direct executor
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+
+    /**
+     * @param looper Looper to post callbacks to
+     * @return Executor posting to the given looper
+     */
+    public static Executor looper(@NonNull Looper looper) {
+        return new Handler(looper)::post;
+    }
+}
@@ -0,0 +1,122 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.annotation.TargetApi;
+import android.net.Network;
+import android.os.Build;
+import android.util.Log;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import lib.gintec_rdl.network_state.core.ResolutionCache;
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
+
+/**
+ * <p>Resolves a spec's hosts in parallel as soon as a network comes up, caching the results
+ * per network.</p>
+ * <p>Lookups run on a small pool shared by all specs. Prewarming is best effort: lookups that
+ * do not fit in the pool's queue are dropped, and failures are only logged.</p>
+ */
+final class DnsPrewarmer {
+    private static final String TAG = "DnsPrewarmer";
+    private static final int MAX_THREADS = 4;
+    private static final int MAX_QUEUED = 64;
+    private static final int MAX_ENTRIES = 64;
+
+    private static volatile ThreadPoolExecutor executor;
+
+    private final String[] hosts;
+    private final ResolutionCache cache;
+
+    DnsPrewarmer(String[] hosts, long ttlMillis) {
+        this.hosts = hosts;
+        this.cache = new ResolutionCache(HandlerScheduler.shared(), ttlMillis, Math.max(MAX_ENTRIES, hosts.length));
+    }
+
+    private static ThreadPoolExecutor executor() {
+        if (executor == null) {
+            synchronized (DnsPrewarmer.class) {
+                if (executor == null) {
+                    final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(MAX_QUEUED), runnable -> {
+                            final Thread thread = new Thread(runnable, "NetworkState-DNS");
+                            thread.setDaemon(true);
+                            return thread;
+                        }, new ThreadPoolExecutor.DiscardPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Resolves every host through the network in the background
+     *
+     * @param networkId Network id
+     * @param network   Network handle, null with the legacy API
+     */
+    void prewarm(long networkId, Network network) {
+        cache.track(networkId);
+        for (String host : hosts) {
+            executor().execute(() -> {
+                try {
+                    cache.put(networkId, host, resolve(network, host));
+                } catch (UnknownHostException e) {
+                    Log.w(TAG, "Could not resolve " + host, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the results of a network that went away or changed DNS servers
+     *
+     * @param networkId Network id
+     */
+    void invalidate(long networkId) {
+        cache.invalidate(networkId);
+    }
+
+    /**
+     * Drops the results of every network, e.g when the spec stops observing them
+     */
+    void clear() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the cached addresses, resolving and caching them on the calling thread if needed
+     *
+     * @param networkId Network id
+     * @param network   Network handle, null to use the default network
+     * @param host      Host name
+     * @return Addresses of the host
+     * @throws UnknownHostException If the host could not be resolved
+     */
+    InetAddress[] lookup(long networkId, Network network, String host) throws UnknownHostException {
+        final InetAddress[] cached = cache.get(networkId, host);
+        if (cached != null) {
+            return cached;
+        }
+        final InetAddress[] addresses = resolve(network, host);
+        cache.put(networkId, host, addresses);
+        return addresses.clone();
+    }
+
+    static InetAddress[] resolve(Network network, String host) throws UnknownHostException {
+        if (network != null && PlatformUtils.isLollipop()) {
+            return resolveOn(network, host);
+        }
+        return InetAddress.getAllByName(host);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static InetAddress[] resolveOn(Network network, String host) throws UnknownHostException {
+        return network.getAllByName(host);
+    }
+}
@@ -0,0 +1,49 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import lib.gintec_rdl.network_state.core.Scheduler;
+
+/**
+ * {@link Scheduler} backed by a {@link Handler}
+ */
+final class HandlerScheduler implements Scheduler {
+    private static volatile HandlerScheduler shared;
+
+    private final Handler handler;
+
+    HandlerScheduler(Looper looper) {
+        this.handler = new Handler(looper);
+    }
+
+    /**
+     * @return Scheduler running on the library's shared background thread
+     */
+    static HandlerScheduler shared() {
+        if (shared == null) {
+            synchronized (HandlerScheduler.class) {
+                if (shared == null) {
+                    shared = new HandlerScheduler(DispatchExecutors.backgroundLooper());
+                }
+            }
+        }
+        return shared;
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        handler.postDelayed(task, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
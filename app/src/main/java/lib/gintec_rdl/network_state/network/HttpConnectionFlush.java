@@ -0,0 +1,46 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import lib.gintec_rdl.network_state.NetworkSwitchHook;
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
+
+/**
+ * <p>Built-in {@link NetworkSwitchHook} evicting the idle keep-alive connections of
+ * {@link java.net.HttpURLConnection}, so requests after a switch do not wait for a socket bound
+ * to the previous network to time out.</p>
+ * <p>The platform has no direct API for this, but flushes the pool whenever the network the
+ * process is bound to changes. The hook briefly binds the process to the new network and
+ * then restores the previous binding. For that short window the whole process is routed over
+ * the new network, so sockets opened concurrently may use it. It does nothing below
+ * Lollipop.</p>
+ * <p>Other pools, e.g OkHttp's, should be evicted with their own hook.</p>
+ */
+public final class HttpConnectionFlush implements NetworkSwitchHook {
+    private final ConnectivityManager connectivityManager;
+
+    /**
+     * @param context .
+     */
+    public HttpConnectionFlush(@NonNull Context context) {
+        this.connectivityManager = ProcessBinding.connectivityManager(context);
+    }
+
+    @Override
+    public void onNetworkSwitch(NetworkSpec networkSpec, NetworkSnapshot previous, NetworkSnapshot current) {
+        final Network network = current.getNetwork();
+        if (network != null && PlatformUtils.isLollipop()) {
+            flush(network);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void flush(Network network) {
+        ProcessBinding.rebindThrough(connectivityManager, network);
+    }
+}
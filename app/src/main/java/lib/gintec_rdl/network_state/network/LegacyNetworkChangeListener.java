@@ -5,108 +5,161 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
+import android.net.Network;
 import android.net.NetworkInfo;
-import android.util.Log;
+import android.os.Handler;
+import android.os.SystemClock;
 
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
 import lib.gintec_rdl.network_state.utils.PlatformUtils;
 
+/**
+ * Listener for connectivity broadcasts. Used before Lollipop, and on later platforms when
+ * selected with {@link NetworkSpec.Builder#legacy()}. Broadcasts are received and classified on
+ * the library's background thread.
+ * The broadcast and {@link NetworkInfo} are deprecated since API 29, but are the only API
+ * available before Lollipop.
+ */
+@SuppressWarnings("deprecation")
 final class LegacyNetworkChangeListener extends BroadcastReceiver implements NetworkChangeListener {
-    private static final String TAG = "LegacyListener";
+    /**
+     * {@link NetworkStatus} for each {@link NetworkInfo.DetailedState}, indexed by ordinal
+     */
+    private static final NetworkStatus[] STATUS_TABLE = new NetworkStatus[NetworkInfo.DetailedState.values().length];
+
+    static {
+        STATUS_TABLE[NetworkInfo.DetailedState.IDLE.ordinal()] = NetworkStatus.IDLE;
+        STATUS_TABLE[NetworkInfo.DetailedState.FAILED.ordinal()] = NetworkStatus.FAILED;
+        STATUS_TABLE[NetworkInfo.DetailedState.BLOCKED.ordinal()] = NetworkStatus.BLOCKED;
+        STATUS_TABLE[NetworkInfo.DetailedState.SCANNING.ordinal()] = NetworkStatus.SCANNING;
+        STATUS_TABLE[NetworkInfo.DetailedState.CONNECTED.ordinal()] = NetworkStatus.AVAILABLE;
+        STATUS_TABLE[NetworkInfo.DetailedState.SUSPENDED.ordinal()] = NetworkStatus.SUSPENDED;
+        STATUS_TABLE[NetworkInfo.DetailedState.CONNECTING.ordinal()] = NetworkStatus.CONNECTING;
+        STATUS_TABLE[NetworkInfo.DetailedState.AUTHENTICATING.ordinal()] = NetworkStatus.AUTHENTICATING;
+        STATUS_TABLE[NetworkInfo.DetailedState.DISCONNECTED.ordinal()] = NetworkStatus.LOST;
+        STATUS_TABLE[NetworkInfo.DetailedState.DISCONNECTING.ordinal()] = NetworkStatus.LOSING;
+        STATUS_TABLE[NetworkInfo.DetailedState.CAPTIVE_PORTAL_CHECK.ordinal()] = NetworkStatus.CHECKING_CAPTIVE_PORTAL;
+        STATUS_TABLE[NetworkInfo.DetailedState.OBTAINING_IPADDR.ordinal()] = NetworkStatus.OBTAINING_IP_ADDRESS;
+        STATUS_TABLE[NetworkInfo.DetailedState.VERIFYING_POOR_LINK.ordinal()] = NetworkStatus.VERIFYING_POOR_LINK;
+    }
+
     private final IntentFilter intentFilter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
 
-    private final NetworkSpec networkSpec;
+    /**
+     * Watched transports, see {@link NetworkSpecs#mask()}
+     */
+    private final int transports;
+    /**
+     * Fans the state out to subscribers. Broadcasts carry no network handle, so the type
+     * parameter is erased and never loaded below API 21.
+     */
+    private final NetworkStateMachine<Network> machine = new NetworkStateMachine<>(true, null);
 
     private boolean registered;
 
-    public LegacyNetworkChangeListener(NetworkSpec networkSpec) {
-        this.networkSpec = networkSpec;
+    /**
+     * Latest known state of the target network. Its status is replayed to late subscribers.
+     */
+    private volatile NetworkSnapshot snapshot = NetworkSnapshot.UNKNOWN;
+    /**
+     * Last available snapshot, to detect network switches. Guarded by {@link #machine}.
+     */
+    private NetworkSnapshot lastAvailable;
+    /**
+     * Extra info (SSID or APN) of {@link #lastAvailable}, null if unknown. Guarded by {@link #machine}.
+     */
+    private String lastExtraInfo;
+    /**
+     * Subscribers, for switch hooks
+     */
+    private final SubscriberTable subscribers = new SubscriberTable();
+
+    LegacyNetworkChangeListener(int transports) {
+        this.transports = transports;
     }
 
     @Override
     public void onReceive(Context context, Intent intent) {
         if (ConnectivityManager.CONNECTIVITY_ACTION.equals(intent.getAction())) {
             final ConnectivityManager mgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-            NetworkInfo networkInfo = mgr.getActiveNetworkInfo();
-            if (networkInfo != null) {
-                boolean isTargetNetwork = networkInfo.getType() == networkSpec.builder.legacyNetworkType;
-
-                if (!isTargetNetwork) {
-                    if (networkSpec.builder.legacyNetworkType == ConnectivityManager.TYPE_BLUETOOTH) {
-                        networkInfo = mgr.getNetworkInfo(ConnectivityManager.TYPE_BLUETOOTH);
-                        isTargetNetwork = true;
-                    }
-                    if (networkSpec.builder.legacyNetworkType == ConnectivityManager.TYPE_ETHERNET) {
-                        networkInfo = mgr.getNetworkInfo(ConnectivityManager.TYPE_ETHERNET);
-                        isTargetNetwork = true;
-                    } else if (networkSpec.builder.legacyNetworkType == ConnectivityManager.TYPE_VPN) {
-                        if (PlatformUtils.isLollipop()) {
-                            networkInfo = mgr.getNetworkInfo(ConnectivityManager.TYPE_VPN);
-                            isTargetNetwork = true;
-                        }
-                    }
-                }
+            final NetworkInfo activeNetworkInfo = mgr.getActiveNetworkInfo();
+            if (activeNetworkInfo == null) {
+                publish(NetworkStatus.NOT_AVAILABLE, null, true, null);
+                return;
+            }
+            final NetworkSpecs activeTransport = NetworkSpecs.fromLegacyType(activeNetworkInfo.getType());
+            if (matches(NetworkSpecs.ANY_SPEC) || (activeTransport != null && matches(activeTransport))) {
+                // Only the active network's metered state is known
+                publish(STATUS_TABLE[activeNetworkInfo.getDetailedState().ordinal()], activeTransport,
+                    mgr.isActiveNetworkMetered(), activeNetworkInfo.getExtraInfo());
+                return;
+            }
 
-                // Type all
-                if (!isTargetNetwork && networkSpec.builder.legacyNetworkType == NetworkSpecs.ANY_SPEC.legacyType) {
-                    isTargetNetwork = true;
+            // Another transport is active, report the best state among the watched ones
+            NetworkInfo best = null;
+            for (NetworkSpecs specs : NetworkSpecs.values()) {
+                if (specs == NetworkSpecs.ANY_SPEC || !matches(specs)
+                    || (specs == NetworkSpecs.VPN_SPEC && !PlatformUtils.isLollipop())) {
+                    continue;
                 }
-
-                if (isTargetNetwork) {
-                    final NetworkInfo.DetailedState detailedState = networkInfo.getDetailedState();
-                    switch (detailedState) {
-                        case IDLE:
-                            callback(networkSpec.builder.whenIdle, networkSpec);
-                            break;
-                        case FAILED:
-                            callback(networkSpec.builder.ifFailed, networkSpec);
-                            break;
-                        case BLOCKED:
-                            callback(networkSpec.builder.ifBlocked, networkSpec);
-                            break;
-                        case SCANNING:
-                            callback(networkSpec.builder.whenScanning, networkSpec);
-                            break;
-                        case CONNECTED:
-                            callback(networkSpec.builder.whenAvailable, networkSpec);
-                            break;
-                        case SUSPENDED:
-                            callback(networkSpec.builder.ifSuspended, networkSpec);
-                            break;
-                        case CONNECTING:
-                            callback(networkSpec.builder.whenConnecting, networkSpec);
-                            break;
-                        case AUTHENTICATING:
-                            callback(networkSpec.builder.whenAuthenticating, networkSpec);
-                            break;
-                        case DISCONNECTED:
-                            callback(networkSpec.builder.whenLost, networkSpec);
-                            break;
-                        case DISCONNECTING:
-                            callback(networkSpec.builder.whenLosing, networkSpec);
-                            break;
-                        case CAPTIVE_PORTAL_CHECK:
-                            callback(networkSpec.builder.whenCheckingCaptivePortal, networkSpec);
-                            break;
-                        case OBTAINING_IPADDR:
-                            callback(networkSpec.builder.whenObtainingIpAddress, networkSpec);
-                            break;
-                        case VERIFYING_POOR_LINK:
-                            callback(networkSpec.builder.whenVerifyingPoorLink, networkSpec);
-                            break;
-                    }
-                } else {
-                    Log.w(TAG, "NetworkSpec type not registered:" + networkInfo.getSubtype());
+                final NetworkInfo networkInfo = mgr.getNetworkInfo(specs.legacyType);
+                if (networkInfo != null && (best == null || (networkInfo.isConnected() && !best.isConnected()))) {
+                    best = networkInfo;
                 }
+            }
+            if (best != null) {
+                publish(STATUS_TABLE[best.getDetailedState().ordinal()],
+                    NetworkSpecs.fromLegacyType(best.getType()), true, best.getExtraInfo());
             } else {
-                callback(networkSpec.builder.whenNotAvailable, networkSpec);
+                publish(NetworkStatus.NOT_AVAILABLE, null, true, null);
             }
         }
     }
 
+    private boolean matches(NetworkSpecs specs) {
+        return (transports & specs.mask()) != 0;
+    }
+
+    /**
+     * @param extraInfo Extra info of the reported network, see {@link NetworkInfo#getExtraInfo()}
+     */
+    private void publish(NetworkStatus status, NetworkSpecs transport, boolean metered, String extraInfo) {
+        synchronized (machine) {
+            final NetworkSnapshot current = snapshot;
+            // Broadcasts carry no network handle. A connection to another access point or APN on
+            // the same transport only shows in the extra info, unless a device does not report it.
+            final boolean reconnected = status == NetworkStatus.AVAILABLE && extraInfo != null
+                && lastExtraInfo != null && !extraInfo.equals(lastExtraInfo);
+            // Broadcasts repeating an unchanged state keep the snapshot, and its timestamp
+            if (reconnected || status != current.getStatus() || transport != current.getTransport()
+                || metered != current.isMetered()) {
+                snapshot = new NetworkSnapshot(status, transport, metered, true, null, SystemClock.uptimeMillis());
+            }
+            if (status == NetworkStatus.AVAILABLE) {
+                lastExtraInfo = extraInfo;
+            }
+            lastAvailable = NetworkSwitch.detect(lastAvailable, snapshot, reconnected, subscribers.get());
+            machine.onState(status, 0);
+        }
+    }
+
+    @Override
+    public void onInitialDeadline() {
+        machine.onInitialDeadline();
+    }
+
+    @Override
+    public NetworkSnapshot snapshot() {
+        return snapshot;
+    }
+
     @Override
     public void registerSelf(Context context) {
         synchronized (this) {
-            context.registerReceiver(this, intentFilter);
+            // Classify broadcasts, including their IPC calls, off the main thread. Callbacks are
+            // posted to each spec's executor at the end of its pipeline.
+            context.registerReceiver(this, intentFilter, null, new Handler(DispatchExecutors.backgroundLooper()));
             registered = true;
         }
     }
@@ -116,6 +169,12 @@ final class LegacyNetworkChangeListener extends BroadcastReceiver implements Net
         synchronized (this) {
             context.unregisterReceiver(this);
             registered = false;
+            snapshot = NetworkSnapshot.UNKNOWN;
+            machine.reset();
+            synchronized (machine) {
+                lastAvailable = null;
+                lastExtraInfo = null;
+            }
         }
     }
 
@@ -125,4 +184,17 @@ final class LegacyNetworkChangeListener extends BroadcastReceiver implements Net
             return registered;
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void subscribe(NetworkSpec spec) {
+        // The sticky broadcast was consumed by earlier subscribers, the machine replays its state
+        subscribers.add(spec);
+        machine.subscribe(spec.stateSubscriber);
+    }
+
+    @Override
+    public int unsubscribe(NetworkSpec spec) {
+        subscribers.remove(spec);
+        return machine.unsubscribe(spec.stateSubscriber);
+    }
+}
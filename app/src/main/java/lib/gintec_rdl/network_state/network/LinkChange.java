@@ -0,0 +1,106 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.annotation.TargetApi;
+import android.net.LinkProperties;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+/**
+ * <p>Set of {@link LinkProperties} fields that changed between two updates of a network.</p>
+ * <p>Updates in which none of the tracked fields changed are not reported.</p>
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public final class LinkChange {
+    public static final int INTERFACE_NAME = 1;
+    public static final int ADDRESSES = 1 << 1;
+    public static final int DNS_SERVERS = 1 << 2;
+    public static final int DOMAINS = 1 << 3;
+    public static final int ROUTES = 1 << 4;
+    public static final int HTTP_PROXY = 1 << 5;
+    /**
+     * Only detected on API 29 and above
+     */
+    public static final int MTU = 1 << 6;
+
+    private final int changedFields;
+    private final LinkProperties previous;
+    private final LinkProperties current;
+
+    private LinkChange(int changedFields, LinkProperties previous, LinkProperties current) {
+        this.changedFields = changedFields;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * @param previous Previous properties
+     * @param current  Current properties
+     * @return The change, null if none of the tracked fields changed
+     */
+    static LinkChange diff(@NonNull LinkProperties previous, @NonNull LinkProperties current) {
+        int changed = 0;
+        if (!equal(previous.getInterfaceName(), current.getInterfaceName())) {
+            changed |= INTERFACE_NAME;
+        }
+        if (!equal(previous.getLinkAddresses(), current.getLinkAddresses())) {
+            changed |= ADDRESSES;
+        }
+        if (!equal(previous.getDnsServers(), current.getDnsServers())) {
+            changed |= DNS_SERVERS;
+        }
+        if (!equal(previous.getDomains(), current.getDomains())) {
+            changed |= DOMAINS;
+        }
+        if (!equal(previous.getRoutes(), current.getRoutes())) {
+            changed |= ROUTES;
+        }
+        if (!equal(previous.getHttpProxy(), current.getHttpProxy())) {
+            changed |= HTTP_PROXY;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && previous.getMtu() != current.getMtu()) {
+            changed |= MTU;
+        }
+        return changed != 0 ? new LinkChange(changed, previous, current) : null;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * @param field One of the field constants, or several or-ed together
+     * @return Whether any of the given fields changed
+     */
+    public boolean has(int field) {
+        return (changedFields & field) != 0;
+    }
+
+    /**
+     * @return Bit mask of the changed fields
+     */
+    public int getChangedFields() {
+        return changedFields;
+    }
+
+    /**
+     * @return Properties before the change
+     */
+    @NonNull
+    public LinkProperties getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return Properties after the change
+     */
+    @NonNull
+    public LinkProperties getCurrent() {
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "LinkChange{changedFields=0x" + Integer.toHexString(changedFields) + ", current=" + current + '}';
+    }
+}
@@ -0,0 +1,164 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.util.LongSparseArray;
+
+import lib.gintec_rdl.network_state.core.Scheduler;
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
+
+/**
+ * <p>Process wide table of shared network change listeners.</p>
+ * <p>Specs watching the same transports with the same requirements share a single system
+ * registration (one network callback or one broadcast receiver). The registration is created
+ * when the first spec subscribes and torn down when the last one unsubscribes, or after the
+ * last spec's grace period if it has one and no spec subscribes in the meantime.</p>
+ */
+final class ListenerRegistry {
+    /**
+     * Number of distinct capabilities a key can hold
+     */
+    static final int CAPABILITY_BITS = 48;
+
+    static final long LEGACY_FLAG = 1 << 8;
+    static final int MODE_SHIFT = 9;
+    static final int CAPABILITIES_SHIFT = Long.SIZE - CAPABILITY_BITS;
+
+    private static volatile ListenerRegistry shared;
+
+    /**
+     * Runs deferred unregistrations
+     */
+    private final Scheduler scheduler;
+    private final LongSparseArray<NetworkChangeListener> listeners = new LongSparseArray<>();
+    private final LongSparseArray<DeferredUnregister> pendingUnregisters = new LongSparseArray<>();
+
+    ListenerRegistry(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return Registry shared by all specs of the process
+     */
+    static ListenerRegistry shared() {
+        if (shared == null) {
+            synchronized (ListenerRegistry.class) {
+                if (shared == null) {
+                    shared = new ListenerRegistry(HandlerScheduler.shared());
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Subscribes the spec to the shared listener for its transport, registering the listener
+     * with the system if this is its first subscriber.
+     *
+     * @param spec Spec to subscribe
+     * @return The listener the spec was subscribed to
+     */
+    synchronized NetworkChangeListener subscribe(NetworkSpec spec) {
+        final long key = keyOf(spec);
+        final DeferredUnregister pending = pendingUnregisters.get(key);
+        if (pending != null) {
+            // Resubscribed within the grace period, keep the registration
+            pendingUnregisters.remove(key);
+            scheduler.cancel(pending);
+        }
+        NetworkChangeListener listener = listeners.get(key);
+        if (listener == null) {
+            listener = createListener(spec);
+            listeners.put(key, listener);
+        }
+        // The spec reads the listener's snapshot while the current state is replayed to it
+        spec.onListenerAcquired(listener);
+        listener.subscribe(spec);
+        if (!listener.isRegistered()) {
+            listener.registerSelf(applicationContext(spec));
+        }
+        return listener;
+    }
+
+    /**
+     * Unsubscribes the spec from the shared listener for its transport, unregistering the
+     * listener from the system if this was its last subscriber.
+     *
+     * @param spec Spec to unsubscribe
+     */
+    synchronized void unsubscribe(NetworkSpec spec) {
+        final long key = keyOf(spec);
+        final NetworkChangeListener listener = listeners.get(key);
+        if (listener != null && listener.unsubscribe(spec) == 0) {
+            final long graceMillis = spec.builder.unregisterGraceMillis;
+            if (graceMillis > 0) {
+                final DeferredUnregister task = new DeferredUnregister(key, applicationContext(spec));
+                pendingUnregisters.put(key, task);
+                scheduler.schedule(task, graceMillis);
+            } else {
+                unregister(key, listener, applicationContext(spec));
+            }
+        }
+    }
+
+    private synchronized void runDeferred(DeferredUnregister task) {
+        // Superseded by a new subscriber
+        if (pendingUnregisters.get(task.key) == task) {
+            pendingUnregisters.remove(task.key);
+            unregister(task.key, listeners.get(task.key), task.context);
+        }
+    }
+
+    private void unregister(long key, NetworkChangeListener listener, Context context) {
+        if (listener.isRegistered()) {
+            listener.unregisterSelf(context);
+        }
+        listeners.remove(key);
+    }
+
+    private static boolean useLegacy(NetworkSpec spec) {
+        return !PlatformUtils.isLollipop() || spec.builder.legacy;
+    }
+
+    /**
+     * @param spec Spec
+     * @return Key of the registration the spec shares with specs of the same transports and
+     * requirements
+     */
+    static long keyOf(NetworkSpec spec) {
+        // Legacy broadcasts are always passive and carry no capabilities
+        if (useLegacy(spec)) {
+            return LEGACY_FLAG | spec.builder.transports;
+        }
+        return (spec.builder.capabilities << CAPABILITIES_SHIFT)
+            | (spec.builder.registrationMode.ordinal() << MODE_SHIFT)
+            | spec.builder.transports;
+    }
+
+    private static NetworkChangeListener createListener(NetworkSpec spec) {
+        if (useLegacy(spec)) {
+            return new LegacyNetworkChangeListener(spec.builder.transports);
+        }
+        return new V21NetworkChangeListener(spec.builder.transports, spec.builder.capabilities,
+            spec.builder.registrationMode);
+    }
+
+    private static Context applicationContext(NetworkSpec spec) {
+        final Context context = spec.builder.context.getApplicationContext();
+        return context != null ? context : spec.builder.context;
+    }
+
+    private final class DeferredUnregister implements Runnable {
+        final long key;
+        final Context context;
+
+        DeferredUnregister(long key, Context context) {
+            this.key = key;
+            this.context = context;
+        }
+
+        @Override
+        public void run() {
+            runDeferred(this);
+        }
+    }
+}
@@ -2,20 +2,10 @@ package lib.gintec_rdl.network_state.network;
 
 import android.content.Context;
 
-import lib.gintec_rdl.network_state.NetworkStateCallback;
-import lib.gintec_rdl.network_state.utils.LangUtils;
-
 /**
  * Callback interface for receiving connection state change events
  */
 interface NetworkChangeListener {
-    NetworkStateCallback NOP_CALLBACK = network -> {
-    };
-
-    default void callback(NetworkStateCallback callback, NetworkSpec spec) {
-        spec.handler.post(() -> LangUtils.Optional.of(callback).orElse(NOP_CALLBACK).action(spec));
-    }
-
     /**
      * Instructs this listener to register itself.
      *
@@ -34,4 +24,31 @@ interface NetworkChangeListener {
      * @return Whether registered or not
      */
     boolean isRegistered();
+
+    /**
+     * @return Latest known state of the observed network
+     */
+    NetworkSnapshot snapshot();
+
+    /**
+     * Reports the network as not available to all subscribers if no state was received since
+     * registering
+     */
+    void onInitialDeadline();
+
+    /**
+     * Adds the spec to this listener's subscribers. If the listener is already registered, the
+     * last known state is replayed to the new subscriber.
+     *
+     * @param spec Spec to subscribe
+     */
+    void subscribe(NetworkSpec spec);
+
+    /**
+     * Removes the spec from this listener's subscribers.
+     *
+     * @param spec Spec to unsubscribe
+     * @return Number of remaining subscribers
+     */
+    int unsubscribe(NetworkSpec spec);
 }
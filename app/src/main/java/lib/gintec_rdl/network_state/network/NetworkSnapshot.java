@@ -0,0 +1,118 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.net.Network;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+/**
+ * <p>Immutable view of the latest known state of a network spec's transport.</p>
+ * <p>Snapshots are maintained from the events the shared listeners already receive, so reading
+ * one never makes a call to the system. A listener only allocates a new snapshot when its state,
+ * or the network or capabilities the state applies to, change.</p>
+ *
+ * @see NetworkSpec#snapshot()
+ */
+public final class NetworkSnapshot {
+    /**
+     * Snapshot used before any event has been received, or while a spec is not attached
+     */
+    public static final NetworkSnapshot UNKNOWN = new NetworkSnapshot(null, null, true, false, null, 0);
+
+    private final NetworkStatus status;
+    private final NetworkSpecs transport;
+    private final boolean metered;
+    private final boolean validated;
+    private final Network network;
+    private final long timestamp;
+
+    NetworkSnapshot(NetworkStatus status, NetworkSpecs transport, boolean metered, boolean validated,
+                    Network network, long timestamp) {
+        this.status = status;
+        this.transport = transport;
+        this.metered = metered;
+        this.validated = validated;
+        this.network = network;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return Latest state, null if unknown
+     */
+    @Nullable
+    public NetworkStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Transport of the network the state applies to, null if unknown
+     */
+    @Nullable
+    public NetworkSpecs getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return Whether the network is (or may be) metered. True if unknown.
+     */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * @return Whether the network was validated to reach the internet. True if the platform
+     * cannot tell, i.e with the legacy API and before Marshmallow.
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * @return Handle of the network the state applies to. Only available with the v21 API while
+     * the network is up.
+     */
+    @Nullable
+    public Network getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return {@link android.os.SystemClock#uptimeMillis()} at which the state was received
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return Whether the network is connected and traffic can be exchanged
+     */
+    public boolean isAvailable() {
+        return status == NetworkStatus.AVAILABLE;
+    }
+
+    /**
+     * @return Whether the network is available and not metered
+     */
+    public boolean isUnmetered() {
+        return status == NetworkStatus.AVAILABLE && !metered;
+    }
+
+    /**
+     * @param other Another snapshot
+     * @return Whether both apply to the same network. Compares the network handles with the
+     * v21 API, the transports with the legacy API.
+     */
+    public boolean isSameNetwork(@NonNull NetworkSnapshot other) {
+        if (network != null && other.network != null) {
+            return network.equals(other.network);
+        }
+        return network == null && other.network == null && transport == other.transport;
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkSnapshot{status=" + status + ", transport=" + transport + ", metered=" + metered
+            + ", validated=" + validated + ", network=" + network + ", timestamp=" + timestamp + '}';
+    }
+}
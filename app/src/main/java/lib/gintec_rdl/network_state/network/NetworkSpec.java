@@ -1,19 +1,49 @@
 package lib.gintec_rdl.network_state.network;
 
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.net.ConnectivityManager;
 import android.net.Network;
-import android.net.NetworkInfo;
 import android.os.Build;
-import android.os.Handler;
 import android.os.Looper;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.net.SocketFactory;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.lifecycle.DefaultLifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.ProcessLifecycleOwner;
+import lib.gintec_rdl.network_state.CapabilitiesCallback;
+import lib.gintec_rdl.network_state.HandoverCallback;
+import lib.gintec_rdl.network_state.LinkChangeCallback;
+import lib.gintec_rdl.network_state.LosingCallback;
+import lib.gintec_rdl.network_state.NetworkHandleCallback;
 import lib.gintec_rdl.network_state.NetworkStateCallback;
+import lib.gintec_rdl.network_state.NetworkSwitchHook;
+import lib.gintec_rdl.network_state.core.BandwidthTiers;
+import lib.gintec_rdl.network_state.core.CapabilitiesFilter;
+import lib.gintec_rdl.network_state.core.DeferredTaskQueue;
+import lib.gintec_rdl.network_state.core.DispatchMetrics;
+import lib.gintec_rdl.network_state.core.DispatchTable;
+import lib.gintec_rdl.network_state.core.EventHistory;
+import lib.gintec_rdl.network_state.core.HandoverCoordinator;
+import lib.gintec_rdl.network_state.core.LinkCapabilities;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+import lib.gintec_rdl.network_state.core.StatePipeline;
+import lib.gintec_rdl.network_state.core.StatePublisher;
+import lib.gintec_rdl.network_state.core.StateSubscriber;
 import lib.gintec_rdl.network_state.utils.PlatformUtils;
+import org.reactivestreams.Publisher;
 
 /**
  * <p>This class specifies the properties of which network connection to listen changes for</p>
@@ -31,49 +61,489 @@ import lib.gintec_rdl.network_state.utils.PlatformUtils;
 public final class NetworkSpec {
     private final DefaultLifecycleObserver lifecycleObserver;
     final Builder builder;
-    final Handler handler;
-    private final NetworkChangeListener listener;
+    final Executor executor;
+    private final StatePipeline pipeline;
+    private final CapabilitiesFilter capabilitiesFilter;
+    private final StatePublisher publisher;
+    private final DnsPrewarmer dnsPrewarmer;
+    private final HandoverCoordinator<Network> handover;
+    /**
+     * Settles the state if the listener reported none within the initial state deadline
+     */
+    private final Runnable initialStateDeadline = () -> {
+        final NetworkChangeListener current = this.listener;
+        if (current != null) {
+            current.onInitialDeadline();
+        }
+    };
+    /**
+     * Receives the output of the shared listener's state machine
+     */
+    final StateSubscriber<Network> stateSubscriber;
+    private boolean subscribed;
+    /**
+     * Attached owners that are currently started. The spec stays subscribed to its listener
+     * while any of them is, or while the stream has subscribers.
+     */
+    private final ArrayList<LifecycleOwner> startedOwners = new ArrayList<>(1);
+    /**
+     * Attaches of the stream not yet matched by a detach. A count rather than a flag, so an
+     * attach racing with the detach of a previous last subscriber cannot be undone by it.
+     */
+    private int streamAttaches;
+    /**
+     * Detaches the stream from the background thread. The last cancel may come from
+     * {@code onNext}, signalled under the listener's lock with a direct executor, while
+     * unsubscribing takes the spec's lock and then the listener's.
+     */
+    private final Runnable streamDetach = () -> onStreamAttached(-1);
+    private volatile NetworkChangeListener listener;
+    /**
+     * Owners waiting for background support detection to complete. Main thread only.
+     */
+    private final ArrayList<LifecycleOwner> pendingOwners = new ArrayList<>(1);
+    private boolean detecting;
+    /**
+     * Guards {@link #boundNetwork}. Separate from the spec's lock, which is held while calling
+     * into listeners.
+     */
+    private final Object bindingLock = new Object();
+    /**
+     * Network the process was bound to with {@link #bindProcess()}
+     */
+    private Network boundNetwork;
 
     private NetworkSpec(Builder builder) {
         this.builder = builder;
-        this.handler = new Handler(Looper.getMainLooper());
-        if (PlatformUtils.isLollipop()) {
-            if (builder.legacy) {
-                listener = new LegacyNetworkChangeListener(this);
-            } else {
-                listener = new V21NetworkChangeListener(this);
+        this.executor = builder.executor != null ? builder.executor : DispatchExecutors.mainThread();
+        final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+        for (int i = 0; i < actions.length; i++) {
+            final NetworkStateCallback callback = builder.callbacks[i];
+            if (callback != null) {
+                actions[i] = () -> callback.action(this);
             }
-        } else {
-            listener = new LegacyNetworkChangeListener(this);
         }
+        // Signalled on the callback executor, never under the listener's lock
+        this.publisher = new StatePublisher(executor, new StatePublisher.Source() {
+            @Override
+            public void attach() {
+                onStreamAttached(1);
+            }
+
+            @Override
+            public void detach() {
+                HandlerScheduler.shared().schedule(streamDetach, 0);
+            }
+        });
+        this.pipeline = new StatePipeline(new DispatchTable(actions, executor, builder.metrics),
+            HandlerScheduler.shared(), builder.debounceMillis, builder.debounceMaxLatencyMillis,
+            !builder.deliverDuplicates,
+            builder.historyCapacity > 0 ? new EventHistory(builder.historyCapacity) : null,
+            builder.taskQueue != null ? status -> {
+                publisher.accept(status);
+                updateTaskQueue();
+            } : publisher);
+        this.capabilitiesFilter = builder.whenCapabilitiesChanged != null
+            ? new CapabilitiesFilter(builder.bandwidthTiers) : null;
+        this.dnsPrewarmer = builder.prewarmHosts != null
+            ? new DnsPrewarmer(builder.prewarmHosts, builder.prewarmTtlMillis) : null;
+        final HandoverCallback handoverCallback = builder.handoverCallback;
+        this.handover = handoverCallback != null ? new HandoverCoordinator<>(HandlerScheduler.shared(),
+            builder.handoverMarginMillis,
+            (losing, replacement, budget) -> executor.execute(
+                () -> handoverCallback.action(this, losing, replacement, budget))) : null;
+        this.stateSubscriber = new StateSubscriber<Network>() {
+            @Override
+            public void onStatus(NetworkStatus status, long networkId) {
+                if (dnsPrewarmer != null && snapshot().getNetwork() == null) {
+                    // Legacy broadcasts, or the last v21 network is gone
+                    if (status == NetworkStatus.AVAILABLE) {
+                        dnsPrewarmer.prewarm(0, null);
+                    } else if (status != NetworkStatus.LOSING) {
+                        dnsPrewarmer.invalidate(0);
+                    }
+                }
+                final NetworkSpecs transport = snapshot().getTransport();
+                pipeline.onEvent(status, transport != null ? transport.ordinal() : EventHistory.TRANSPORT_UNKNOWN,
+                    networkId);
+            }
+
+            @Override
+            public void onNetworkAvailable(long networkId, Network network) {
+                if (dnsPrewarmer != null) {
+                    dnsPrewarmer.prewarm(networkId, network);
+                }
+                if (handover != null) {
+                    handover.onAvailable(networkId, network);
+                }
+                final NetworkHandleCallback callback = builder.whenNetworkAvailable;
+                if (callback != null) {
+                    executor.execute(() -> callback.action(NetworkSpec.this, network));
+                }
+            }
+
+            @Override
+            public void onNetworkLosing(long networkId, Network network, int maxMsToLive, Network replacement) {
+                if (handover != null) {
+                    handover.onLosing(networkId, network, maxMsToLive, replacement);
+                }
+                final LosingCallback callback = builder.whenNetworkLosing;
+                if (callback != null) {
+                    executor.execute(() -> callback.action(NetworkSpec.this, network, maxMsToLive, replacement));
+                }
+            }
+
+            @Override
+            public void onNetworkLost(long networkId, Network network) {
+                if (capabilitiesFilter != null) {
+                    capabilitiesFilter.forget(networkId);
+                }
+                if (dnsPrewarmer != null) {
+                    dnsPrewarmer.invalidate(networkId);
+                }
+                if (handover != null) {
+                    handover.onLost(networkId);
+                }
+                releaseBinding(network);
+                final NetworkHandleCallback callback = builder.whenNetworkLost;
+                if (callback != null) {
+                    executor.execute(() -> callback.action(NetworkSpec.this, network));
+                }
+            }
+        };
         this.lifecycleObserver = new DefaultLifecycleObserver() {
             @Override
             public void onStart(@NonNull LifecycleOwner owner) {
-                listener.registerSelf(builder.context);
+                setStarted(owner, true);
             }
 
             @Override
             public void onStop(@NonNull LifecycleOwner owner) {
-                listener.unregisterSelf(builder.context);
+                setStarted(owner, false);
             }
         };
     }
 
+    private synchronized void setStarted(LifecycleOwner owner, boolean started) {
+        if (!started) {
+            startedOwners.remove(owner);
+        } else if (!startedOwners.contains(owner)) {
+            startedOwners.add(owner);
+        }
+        updateSubscription();
+    }
+
+    private synchronized void onStreamAttached(int delta) {
+        streamAttaches += delta;
+        updateSubscription();
+    }
+
+    private void updateSubscription() {
+        final boolean wanted = streamAttaches > 0 || !startedOwners.isEmpty();
+        if (wanted && !subscribed) {
+            subscribed = true;
+            ListenerRegistry.shared().subscribe(this);
+            // A replay of an unchanged state may be dropped as a duplicate, the queue still
+            // needs the conditions of the registration joined
+            updateTaskQueue();
+            if (builder.initialStateMillis > 0) {
+                HandlerScheduler.shared().schedule(initialStateDeadline, builder.initialStateMillis);
+            }
+        } else if (!wanted && subscribed) {
+            subscribed = false;
+            listener = null;
+            HandlerScheduler.shared().cancel(initialStateDeadline);
+            if (handover != null) {
+                handover.clear();
+            }
+            // Losses are not observed anymore
+            releaseBinding(null);
+            if (dnsPrewarmer != null) {
+                dnsPrewarmer.clear();
+            }
+            if (capabilitiesFilter != null) {
+                capabilitiesFilter.clear();
+            }
+            // Hold queued tasks while nothing is known about the network
+            updateTaskQueue();
+            ListenerRegistry.shared().unsubscribe(this);
+            pipeline.clear();
+        }
+    }
+
+    /**
+     * Called by the registry with the listener this spec is about to be subscribed to, before
+     * the listener replays its current state
+     *
+     * @param listener The listener
+     */
+    void onListenerAcquired(NetworkChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Called by listeners when the capabilities of a network matching this spec change
+     *
+     * @param network        The network
+     * @param downstreamKbps Downstream bandwidth
+     * @param upstreamKbps   Upstream bandwidth
+     * @param metered        Whether the network is metered
+     * @param validated      Whether the network is validated
+     */
+    void onCapabilitiesChanged(Network network, int downstreamKbps, int upstreamKbps, boolean metered, boolean validated) {
+        updateTaskQueue();
+        if (capabilitiesFilter == null) {
+            return;
+        }
+        final LinkCapabilities capabilities = capabilitiesFilter.update(PlatformUtils.networkId(network),
+            downstreamKbps, upstreamKbps, metered, validated);
+        if (capabilities != null) {
+            final CapabilitiesCallback callback = builder.whenCapabilitiesChanged;
+            executor.execute(() -> callback.action(this, network, capabilities));
+        }
+    }
+
+    private void updateTaskQueue() {
+        final DeferredTaskQueue queue = builder.taskQueue;
+        if (queue != null) {
+            final NetworkSnapshot current = snapshot();
+            queue.onConditions(current.isAvailable(), !current.isMetered(), current.isValidated());
+        }
+    }
+
+    /**
+     * Called by listeners, on their thread, when the network this spec's state applies to
+     * changes
+     *
+     * @param previous Last available snapshot
+     * @param current  New available snapshot
+     */
+    void onNetworkSwitch(NetworkSnapshot previous, NetworkSnapshot current) {
+        for (NetworkSwitchHook hook : builder.switchHooks) {
+            hook.onNetworkSwitch(this, previous, current);
+        }
+    }
+
+    /**
+     * Called by listeners when the link properties of a network matching this spec change
+     *
+     * @param network The network
+     * @param change  The changed fields
+     */
+    void onLinkPropertiesChanged(Network network, LinkChange change) {
+        if (dnsPrewarmer != null && change.has(LinkChange.DNS_SERVERS)) {
+            final long networkId = PlatformUtils.networkId(network);
+            dnsPrewarmer.invalidate(networkId);
+            dnsPrewarmer.prewarm(networkId, network);
+        }
+        final LinkChangeCallback callback = builder.whenLinkPropertiesChanged;
+        if (callback != null) {
+            executor.execute(() -> callback.action(this, network, change));
+        }
+    }
+
+    /**
+     * <p>Returns the latest known state of this spec's network without calling into the system.</p>
+     * <p>The snapshot is kept up to date from the events received while this spec is attached
+     * and started, and reflects the raw state before debouncing or duplicate filtering.
+     * {@link NetworkSnapshot#UNKNOWN} is returned while the spec is not started.</p>
+     *
+     * @return Latest snapshot, never null
+     */
+    @NonNull
+    public NetworkSnapshot snapshot() {
+        final NetworkChangeListener current = listener;
+        return current != null ? current.snapshot() : NetworkSnapshot.UNKNOWN;
+    }
+
+    /**
+     * <p>Returns the recent transitions of this spec, for diagnostics.</p>
+     * <p>Both the states received from the system and the states delivered to callbacks are
+     * recorded, with their {@link android.os.SystemClock#uptimeMillis()} timestamp,
+     * {@link NetworkSpecs} ordinal and network id. Use {@link EventHistory#dump(StringBuilder)}
+     * to attach them to bug reports.</p>
+     *
+     * @return The history, null if disabled with {@link Builder#historyCapacity(int)}
+     */
+    @Nullable
+    public EventHistory history() {
+        return pipeline.history();
+    }
+
+    /**
+     * <p>Resolves a host through the network this spec currently tracks, or the default network
+     * if it tracks none or uses the legacy API.</p>
+     * <p>With {@link Builder#prewarmDns(long, String...)}, results are served from and stored in
+     * the spec's per-network cache. Blocks while resolving, so must not be called on the main
+     * thread.</p>
+     *
+     * @param host Host name
+     * @return Addresses of the host
+     * @throws UnknownHostException If the host could not be resolved
+     */
+    @NonNull
+    public InetAddress[] lookup(@NonNull String host) throws UnknownHostException {
+        final Network network = snapshot().getNetwork();
+        if (dnsPrewarmer == null) {
+            return DnsPrewarmer.resolve(network, host);
+        }
+        return dnsPrewarmer.lookup(network != null ? PlatformUtils.networkId(network) : 0, network, host);
+    }
+
+    /**
+     * @return Network this spec's state currently applies to, null if none or with the legacy
+     * API
+     */
+    @Nullable
+    public Network network() {
+        return snapshot().getNetwork();
+    }
+
+    /**
+     * <p>Returns a socket factory whose sockets are bound to the network this spec tracks, so
+     * their traffic goes over it regardless of the default route.</p>
+     * <p>Sockets already created keep their network when the spec moves to another one.</p>
+     *
+     * @return The factory, null if the spec tracks no network or uses the legacy API
+     */
+    @Nullable
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public SocketFactory socketFactory() {
+        final Network network = network();
+        return network != null ? network.getSocketFactory() : null;
+    }
+
+    /**
+     * <p>Opens a connection over the network this spec tracks, regardless of the default
+     * route, e.g to keep bulk transfers on Wi-Fi while the default network is cellular.</p>
+     *
+     * @param url URL to connect to
+     * @return The unconnected connection
+     * @throws IOException If the spec tracks no network, uses the legacy API, or opening failed
+     */
+    @NonNull
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public URLConnection openConnection(@NonNull URL url) throws IOException {
+        final Network network = network();
+        if (network == null) {
+            throw new IOException("No network matching the spec to connect over");
+        }
+        return network.openConnection(url);
+    }
+
+    /**
+     * <p>Binds the whole process to the network this spec tracks, so all its traffic,
+     * including libraries that cannot be given a socket factory, goes over it.</p>
+     * <p>The binding is released with {@link #unbindProcess()}, and automatically when the
+     * network is lost or the spec stops. Prefer {@link #socketFactory()} or
+     * {@link #openConnection(URL)} to only route part of the traffic.</p>
+     *
+     * @return Whether the process is now bound to the network
+     */
+    public boolean bindProcess() {
+        final Network network = network();
+        if (network == null || !PlatformUtils.isLollipop()) {
+            return false;
+        }
+        synchronized (bindingLock) {
+            if (!ProcessBinding.bind(ProcessBinding.connectivityManager(builder.context), network)) {
+                return false;
+            }
+            boundNetwork = network;
+            return true;
+        }
+    }
+
+    /**
+     * Releases the binding made with {@link #bindProcess()}, unless the process was bound to
+     * another network since
+     */
+    public void unbindProcess() {
+        releaseBinding(null);
+    }
+
+    /**
+     * @param lost Network that went down, null to release the binding regardless of network
+     */
+    private void releaseBinding(Network lost) {
+        synchronized (bindingLock) {
+            final Network network = boundNetwork;
+            if (network == null || (lost != null && !lost.equals(network))) {
+                return;
+            }
+            boundNetwork = null;
+            ProcessBinding.unbind(ProcessBinding.connectivityManager(builder.context), network);
+        }
+    }
+
+    /**
+     * <p>Returns the states of this spec as a Reactive Streams publisher, after debouncing and
+     * duplicate filtering like the callbacks.</p>
+     * <p>Demand is honoured without queueing: while a subscriber has no outstanding demand,
+     * newer states replace the undelivered one, so it only ever sees the latest state. Late
+     * subscribers get the last delivered state first. States are signalled on the callback
+     * executor, see {@link Builder#dispatchOn(Executor)}. Subscribers may cancel from
+     * {@code onNext} with any executor; the registration is then released asynchronously.</p>
+     * <p>The first subscription registers the spec with the system like a started lifecycle
+     * owner does, cancelling the last one unregisters it unless an attached owner is still
+     * started. Support is not detected for streams.</p>
+     *
+     * @return The publisher, never completing
+     */
+    @NonNull
+    public Publisher<NetworkStatus> states() {
+        return publisher;
+    }
+
     /**
-     * Attaches the listener lifecycle owner
+     * <p>Attaches the listener lifecycle owner.</p>
+     * <p>A spec may be attached to several owners at once; it is then started while any of
+     * them is.</p>
      *
      * @param lifecycleOwner Lifecycle owner to attach to
      */
     public void attachTo(@NonNull LifecycleOwner lifecycleOwner) {
-        if (!builder.networkSupported) {
-            listener.callback(builder.ifNotSupported, this);
+        if (builder.detectSupportInBackground && SupportDetector.cached(builder.transports) == SupportDetector.UNKNOWN) {
+            if (!pendingOwners.contains(lifecycleOwner)) {
+                pendingOwners.add(lifecycleOwner);
+            }
+            if (!detecting) {
+                detecting = true;
+                SupportDetector.detectAsync(builder.context, builder.transports, supported -> {
+                    detecting = false;
+                    // Owners detached while detection was running were removed
+                    final LifecycleOwner[] owners = pendingOwners.toArray(new LifecycleOwner[0]);
+                    pendingOwners.clear();
+                    for (LifecycleOwner owner : owners) {
+                        onSupportDetected(owner, supported);
+                    }
+                });
+            }
+        } else {
+            onSupportDetected(lifecycleOwner, SupportDetector.detect(builder.context, builder.transports));
+        }
+    }
+
+    private void onSupportDetected(LifecycleOwner lifecycleOwner, boolean supported) {
+        if (!supported) {
+            pipeline.deliver(NetworkStatus.NOT_SUPPORTED);
             // Nothing to observe
         } else {
-            listener.callback(builder.ifSupported, this);
+            pipeline.deliver(NetworkStatus.SUPPORTED);
             lifecycleOwner.getLifecycle().addObserver(lifecycleObserver);
         }
     }
 
+    /**
+     * <p>Attaches the spec to the lifecycle of the whole process, so it is started while any
+     * activity of the app is visible.</p>
+     * <p>The process only reports being stopped shortly after its last activity stops, so
+     * rotations and switches between activities do not restart the spec.</p>
+     */
+    public void attachToProcess() {
+        attachTo(ProcessLifecycleOwner.get());
+    }
+
     /**
      * Detach the network state change listener from the given lifecycle owner
      *
@@ -81,42 +551,57 @@ public final class NetworkSpec {
      */
     public void detachFrom(LifecycleOwner lifecycleOwner) {
         if (lifecycleOwner != null) {
+            pendingOwners.remove(lifecycleOwner);
             lifecycleOwner.getLifecycle().removeObserver(lifecycleObserver);
 
-            // No need to keep the listener active
-            if (listener.isRegistered()) {
-                listener.unregisterSelf(builder.context);
-            }
+            // Removing the observer does not dispatch onStop
+            setStarted(lifecycleOwner, false);
         }
     }
 
     /**
      * Listener builder class.
-     * <p>Note that callback methods specified here will be called on the U.I thread</p>
+     * <p>Note that callback methods specified here will be called on the U.I thread unless
+     * another executor is specified with {@link #dispatchOn(Executor)}</p>
      */
     public static final class Builder {
-        NetworkStateCallback whenIdle;
-        NetworkStateCallback ifFailed;
-        NetworkStateCallback ifBlocked;
-        NetworkStateCallback whenScanning;
-        NetworkStateCallback ifSuspended;
-        NetworkStateCallback whenConnecting;
-        NetworkStateCallback whenAuthenticating;
-        NetworkStateCallback whenVerifyingPoorLink;
-        NetworkStateCallback whenCheckingCaptivePortal;
-        NetworkStateCallback whenObtainingIpAddress;
-        NetworkStateCallback whenLosing;
-        NetworkStateCallback whenLost;
-        NetworkStateCallback whenNotAvailable;
-        NetworkStateCallback whenAvailable;
-        NetworkStateCallback ifSupported;
-        NetworkStateCallback ifNotSupported;
-
-        final int legacyNetworkType;
-        final int v21NetworkType;
-        private boolean legacy;
-        private boolean networkSupported;
-        private final Context context;
+        /**
+         * Callbacks indexed by {@link NetworkStatus#ordinal()}
+         */
+        final NetworkStateCallback[] callbacks = new NetworkStateCallback[NetworkStatus.COUNT];
+        NetworkHandleCallback whenNetworkAvailable;
+        NetworkHandleCallback whenNetworkLost;
+        CapabilitiesCallback whenCapabilitiesChanged;
+        BandwidthTiers bandwidthTiers;
+        LinkChangeCallback whenLinkPropertiesChanged;
+        int historyCapacity = 32;
+        long initialStateMillis = 1000;
+        DeferredTaskQueue taskQueue;
+        NetworkSwitchHook[] switchHooks = new NetworkSwitchHook[0];
+        String[] prewarmHosts;
+        LosingCallback whenNetworkLosing;
+        HandoverCallback handoverCallback;
+        long handoverMarginMillis;
+        long prewarmTtlMillis;
+        DispatchMetrics metrics;
+
+        /**
+         * Watched transports, see {@link NetworkSpecs#mask()}
+         */
+        final int transports;
+        /**
+         * Required {@link android.net.NetworkCapabilities}, a bit per capability
+         */
+        long capabilities;
+        boolean legacy;
+        RegistrationMode registrationMode = RegistrationMode.OBSERVE;
+        Executor executor;
+        long debounceMillis;
+        long debounceMaxLatencyMillis;
+        boolean deliverDuplicates;
+        boolean detectSupportInBackground;
+        long unregisterGraceMillis;
+        final Context context;
 
         private boolean mutable;
 
@@ -126,8 +611,20 @@ public final class NetworkSpec {
          */
         public Builder(Context context, NetworkSpecs specs) {
             this.context = context;
-            this.legacyNetworkType = specs.legacyType;
-            this.v21NetworkType = specs.v21Type;
+            this.transports = specs.mask();
+            mutable = true;
+        }
+
+        /**
+         * @param context Application context
+         * @param specs   Network specifications, the spec is available while any of them is
+         */
+        public Builder(Context context, Set<NetworkSpecs> specs) {
+            if (specs.isEmpty()) {
+                throw new IllegalArgumentException("At least one network specification is required");
+            }
+            this.context = context;
+            this.transports = NetworkSpecs.maskOf(specs);
             mutable = true;
         }
 
@@ -138,7 +635,7 @@ public final class NetworkSpec {
         }
 
         /**
-         * Use pre-Lollipop API for older devices
+         * Use the connectivity broadcast API. Always used before Lollipop
          *
          * @return .
          */
@@ -158,6 +655,277 @@ public final class NetworkSpec {
             return this;
         }
 
+        /**
+         * <p>Passively observe the specified network without asking the system to bring it up.
+         * This is the default.</p>
+         * <p>Only applies to the v21 API; the legacy API is always passive.</p>
+         *
+         * @return .
+         * @see #request()
+         */
+        public Builder observe() {
+            this.registrationMode = RegistrationMode.OBSERVE;
+            return this;
+        }
+
+        /**
+         * <p>Passively observe the system default network, i.e the network app traffic goes over
+         * by default. Only valid for {@link NetworkSpecs#ANY_SPEC}.</p>
+         * <p>Only applies to the v21 API; the legacy API is always passive.</p>
+         *
+         * @return .
+         * @throws IllegalStateException If this builder is not for {@link NetworkSpecs#ANY_SPEC}
+         */
+        @RequiresApi(api = Build.VERSION_CODES.N)
+        public Builder observeDefaultNetwork() {
+            if (transports != NetworkSpecs.ANY_SPEC.mask()) {
+                throw new IllegalStateException("The default network can only be observed with ANY_SPEC");
+            }
+            this.registrationMode = RegistrationMode.OBSERVE_DEFAULT;
+            return this;
+        }
+
+        /**
+         * <p>Ask the system to bring up the specified network and keep it up while this spec is
+         * attached. This keeps radios powered, so only use it if the network is actually needed.</p>
+         * <p>Only applies to the v21 API; the legacy API is always passive.</p>
+         *
+         * @return .
+         * @see #observe()
+         */
+        @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+        public Builder request() {
+            this.registrationMode = RegistrationMode.REQUEST;
+            return this;
+        }
+
+        /**
+         * <p>Only match networks with the given capability, e.g
+         * {@link android.net.NetworkCapabilities#NET_CAPABILITY_NOT_METERED}. May be called
+         * several times; all capabilities are then required.</p>
+         * <p>Only applies to the v21 API, legacy broadcasts carry no capabilities.</p>
+         *
+         * @param capability One of the {@code NetworkCapabilities.NET_CAPABILITY_*} constants
+         * @return .
+         */
+        @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+        public Builder requireCapability(int capability) {
+            if (capability < 0 || capability >= ListenerRegistry.CAPABILITY_BITS) {
+                throw new IllegalArgumentException("Unknown capability " + capability);
+            }
+            this.capabilities |= 1L << capability;
+            return this;
+        }
+
+        /**
+         * Dispatch callbacks on the main (U.I) thread. This is the default.
+         *
+         * @return .
+         */
+        public Builder dispatchOnMainThread() {
+            this.executor = DispatchExecutors.mainThread();
+            return this;
+        }
+
+        /**
+         * <p>Dispatch callbacks on the given executor.</p>
+         * <p>Specs may share the same executor, see {@link DispatchExecutors#sharedBackground()}
+         * for a ready made background one and {@link DispatchExecutors#direct()} for delivery on
+         * the thread that received the event.</p>
+         *
+         * @param executor Executor to run callbacks on
+         * @return .
+         */
+        public Builder dispatchOn(@NonNull Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Dispatch callbacks on the given looper's thread
+         *
+         * @param looper Looper to post callbacks to
+         * @return .
+         */
+        public Builder dispatchOn(@NonNull Looper looper) {
+            this.executor = DispatchExecutors.looper(looper);
+            return this;
+        }
+
+        /**
+         * <p>Coalesce bursts of state changes and only deliver the settled state.</p>
+         * <p>A state is delivered once no other state was received for {@code quietMillis}, but
+         * never later than {@code maxLatencyMillis} after the first state of a burst. This
+         * applies to every state callback except {@link #ifSupported(NetworkStateCallback)} and
+         * {@link #ifNotSupported(NetworkStateCallback)}.</p>
+         *
+         * @param quietMillis      Quiet window in milliseconds. 0 disables debouncing.
+         * @param maxLatencyMillis Maximum time in milliseconds a state can be held back. Must
+         *                         not be less than {@code quietMillis}.
+         * @return .
+         */
+        public Builder debounce(long quietMillis, long maxLatencyMillis) {
+            if (quietMillis < 0 || maxLatencyMillis < quietMillis) {
+                throw new IllegalArgumentException("Expected 0 <= quietMillis <= maxLatencyMillis");
+            }
+            this.debounceMillis = quietMillis;
+            this.debounceMaxLatencyMillis = maxLatencyMillis;
+            return this;
+        }
+
+        /**
+         * <p>Deliver every state received from the system, including consecutive duplicates.</p>
+         * <p>By default a state callback is only called if the state differs from the previously
+         * delivered one, e.g the sticky connectivity broadcast replayed on every start does not
+         * call {@link #whenAvailable(NetworkStateCallback)} again if the network was available
+         * already.</p>
+         *
+         * @return .
+         */
+        public Builder deliverDuplicates() {
+            this.deliverDuplicates = true;
+            return this;
+        }
+
+        /**
+         * <p>Detect network support on a background thread when the spec is attached.</p>
+         * <p>Support is detected once per process for each {@link NetworkSpecs} value. By default
+         * the first detection runs on the thread calling {@link NetworkSpec#attachTo(LifecycleOwner)}.
+         * With this option, if no result is cached yet, the detection runs in the background and
+         * {@link #ifSupported(NetworkStateCallback)} or {@link #ifNotSupported(NetworkStateCallback)}
+         * is delivered, and the spec started, once it completes.</p>
+         *
+         * @return .
+         */
+        public Builder detectSupportInBackground() {
+            this.detectSupportInBackground = true;
+            return this;
+        }
+
+        /**
+         * <p>Set the deadline for the initial state after the spec is started. Defaults to one
+         * second.</p>
+         * <p>The system reports matching networks right after registering, but says nothing if
+         * there are none. If no state was received when the deadline passes, the current state
+         * is read as {@link NetworkStatus#NOT_AVAILABLE} and delivered to
+         * {@link #whenNotAvailable(NetworkStateCallback)}, so the first state always arrives
+         * in bounded time.</p>
+         *
+         * @param millis Deadline in milliseconds, 0 to wait for the system indefinitely
+         * @return .
+         */
+        public Builder initialStateTimeout(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("millis < 0");
+            }
+            this.initialStateMillis = millis;
+            return this;
+        }
+
+        /**
+         * <p>Keep the system registration alive for the given time after the last spec using it
+         * stops, so specs stopped and started again in quick succession, e.g on rotation or
+         * task switches, reuse it.</p>
+         * <p>Reusing a registration does not cost a round-trip to the system and the
+         * registration's initial callbacks are not delivered again; the spec only receives its
+         * current state, which is dropped unless it changed or
+         * {@link #deliverDuplicates()} is set. Defaults to 0, unregistering right away.</p>
+         *
+         * @param millis Grace period in milliseconds
+         * @return .
+         */
+        public Builder unregisterGracePeriod(long millis) {
+            if (millis < 0) {
+                throw new IllegalArgumentException("millis < 0");
+            }
+            this.unregisterGraceMillis = millis;
+            return this;
+        }
+
+        /**
+         * <p>Resolve the given hosts in parallel as soon as a network matching this spec comes
+         * up, so the first requests do not pay for DNS lookups.</p>
+         * <p>Hosts are resolved through the network itself with the v21 API, and cached per
+         * network for {@link NetworkSpec#lookup(String)}. A network's results are dropped when it
+         * is lost, and resolved again when its DNS servers change.</p>
+         *
+         * @param ttlMillis Time a resolution stays cached
+         * @param hosts     Host names to resolve
+         * @return .
+         */
+        public Builder prewarmDns(long ttlMillis, @NonNull String... hosts) {
+            if (ttlMillis <= 0) {
+                throw new IllegalArgumentException("ttlMillis <= 0");
+            }
+            if (hosts.length == 0) {
+                throw new IllegalArgumentException("No hosts to resolve");
+            }
+            this.prewarmTtlMillis = ttlMillis;
+            this.prewarmHosts = hosts.clone();
+            return this;
+        }
+
+        /**
+         * <p>Add a hook run when the spec's state moves to another network, e.g from Wi-Fi to
+         * cellular. Hooks run synchronously on the listener thread, in the order they were added,
+         * before the callbacks of the new state are dispatched.</p>
+         * <p>Use {@link HttpConnectionFlush} to evict idle {@link java.net.HttpURLConnection}
+         * connections, and a hook of your own for other connection pools.</p>
+         *
+         * @param hook Hook to add
+         * @return .
+         */
+        public Builder onNetworkSwitch(@NonNull NetworkSwitchHook hook) {
+            final NetworkSwitchHook[] hooks = new NetworkSwitchHook[switchHooks.length + 1];
+            System.arraycopy(switchHooks, 0, hooks, 0, switchHooks.length);
+            hooks[switchHooks.length] = hook;
+            this.switchHooks = hooks;
+            return this;
+        }
+
+        /**
+         * <p>Feed the network conditions of this spec to a task queue, so work submitted to it
+         * while offline runs once the network is available, and constrained work once the
+         * network is unmetered or validated as required.</p>
+         * <p>A queue should be fed by a single spec. Tasks are held while the spec is stopped.</p>
+         *
+         * @param queue Queue to drive
+         * @return .
+         */
+        public Builder taskQueue(@NonNull DeferredTaskQueue queue) {
+            this.taskQueue = queue;
+            return this;
+        }
+
+        /**
+         * Set the number of transitions kept in {@link NetworkSpec#history()}. Defaults to 32.
+         *
+         * @param capacity Number of transitions, rounded up to a power of two. 0 disables the
+         *                 history.
+         * @return .
+         */
+        public Builder historyCapacity(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("capacity < 0");
+            }
+            this.historyCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * <p>Record per-state event counts, queue-to-dispatch latency and callback execution time
+         * of this spec into the given metrics. One instance may be shared by several specs.</p>
+         * <p>Use {@link DispatchMetrics#DispatchMetrics(long, DispatchMetrics.SlowCallbackListener)}
+         * to be warned about callbacks exceeding a time budget. Disabled by default.</p>
+         *
+         * @param metrics Metrics to record into, null to disable
+         * @return .
+         */
+        public Builder metrics(DispatchMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         /**
          * Set callback when network is idle
          * <p><font color="red">Call not guaranteed</font></p>
@@ -167,7 +935,7 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#IDLE
          */
         public Builder whenIdle(NetworkStateCallback callback) {
-            this.whenIdle = callback;
+            callbacks[NetworkStatus.IDLE.ordinal()] = callback;
             return this;
         }
 
@@ -180,7 +948,7 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#FAILED
          */
         public Builder ifFailed(NetworkStateCallback callback) {
-            this.ifFailed = callback;
+            callbacks[NetworkStatus.FAILED.ordinal()] = callback;
             return this;
         }
 
@@ -193,7 +961,7 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#BLOCKED
          */
         public Builder ifBlocked(NetworkStateCallback callback) {
-            ifBlocked = callback;
+            callbacks[NetworkStatus.BLOCKED.ordinal()] = callback;
             return this;
         }
 
@@ -206,7 +974,7 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#SCANNING
          */
         public Builder whenScanning(NetworkStateCallback callback) {
-            whenScanning = callback;
+            callbacks[NetworkStatus.SCANNING.ordinal()] = callback;
             return this;
         }
 
@@ -219,42 +987,50 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#SUSPENDED
          */
         public Builder ifSuspended(NetworkStateCallback callback) {
-            ifSuspended = callback;
+            callbacks[NetworkStatus.SUSPENDED.ordinal()] = callback;
             return this;
         }
 
         public Builder whenConnecting(NetworkStateCallback callback) {
-            whenConnecting = callback;
+            callbacks[NetworkStatus.CONNECTING.ordinal()] = callback;
             return this;
         }
 
         public Builder whenAuthenticating(NetworkStateCallback callback) {
-            whenAuthenticating = callback;
+            callbacks[NetworkStatus.AUTHENTICATING.ordinal()] = callback;
             return this;
         }
 
         public Builder whenVerifyingPoorLink(NetworkStateCallback callback) {
-            whenVerifyingPoorLink = callback;
+            callbacks[NetworkStatus.VERIFYING_POOR_LINK.ordinal()] = callback;
             return this;
         }
 
         public Builder whenCheckingCaptivePortal(NetworkStateCallback callback) {
-            whenCheckingCaptivePortal = callback;
+            callbacks[NetworkStatus.CHECKING_CAPTIVE_PORTAL.ordinal()] = callback;
             return this;
         }
 
         public Builder whenObtainingIpAddress(NetworkStateCallback callback) {
-            whenObtainingIpAddress = callback;
+            callbacks[NetworkStatus.OBTAINING_IP_ADDRESS.ordinal()] = callback;
             return this;
         }
 
         public Builder whenLosing(NetworkStateCallback callback) {
-            whenLosing = callback;
+            callbacks[NetworkStatus.LOSING.ordinal()] = callback;
             return this;
         }
 
+        /**
+         * <p>Callback when the network is lost</p>
+         * <p>With the v21 API this is only called once the last network matching the spec goes
+         * down, see {@link #whenNetworkLost(NetworkHandleCallback)} for individual networks.</p>
+         *
+         * @param callback .
+         * @return .
+         */
         public Builder whenLost(NetworkStateCallback callback) {
-            whenLost = callback;
+            callbacks[NetworkStatus.LOST.ordinal()] = callback;
             return this;
         }
 
@@ -267,7 +1043,7 @@ public final class NetworkSpec {
          * @return .
          */
         public Builder whenNotAvailable(NetworkStateCallback callback) {
-            whenNotAvailable = callback;
+            callbacks[NetworkStatus.NOT_AVAILABLE.ordinal()] = callback;
             return this;
         }
 
@@ -281,7 +1057,111 @@ public final class NetworkSpec {
          * @see android.net.NetworkInfo.DetailedState#CONNECTED
          */
         public Builder whenAvailable(NetworkStateCallback callback) {
-            whenAvailable = callback;
+            callbacks[NetworkStatus.AVAILABLE.ordinal()] = callback;
+            return this;
+        }
+
+        /**
+         * <p>Callback when one network matching the spec comes up, with its handle.</p>
+         * <p>Unlike {@link #whenAvailable(NetworkStateCallback)}, which only fires when the first
+         * matching network comes up, this fires for every matching network. v21 API only.</p>
+         *
+         * @param callback .
+         * @return .
+         */
+        public Builder whenNetworkAvailable(NetworkHandleCallback callback) {
+            whenNetworkAvailable = callback;
+            return this;
+        }
+
+        /**
+         * <p>Callback when one network matching the spec is about to go down, with its time to
+         * live and the network to move to, if another matching network is already up.</p>
+         * <p>Unlike {@link #whenLosing(NetworkStateCallback)}, which only fires for the last
+         * matching network, this fires for every matching network. v21 API only.</p>
+         *
+         * @param callback .
+         * @return .
+         * @see #handover(long, HandoverCallback)
+         */
+        public Builder whenNetworkLosing(LosingCallback callback) {
+            whenNetworkLosing = callback;
+            return this;
+        }
+
+        /**
+         * <p>Move long-lived work to the replacement network before a losing network goes down,
+         * instead of after a stall.</p>
+         * <p>The callback is dispatched as soon as the replacement is known, either right away or
+         * when it comes up, with the time left before the losing network's deadline minus the
+         * margin. If no replacement comes up in time, or the losing network goes down first, it
+         * is not called. v21 API only.</p>
+         *
+         * @param marginMillis Time kept in reserve before the deadline
+         * @param callback     Migration to run
+         * @return .
+         */
+        public Builder handover(long marginMillis, @NonNull HandoverCallback callback) {
+            if (marginMillis < 0) {
+                throw new IllegalArgumentException("marginMillis < 0");
+            }
+            this.handoverMarginMillis = marginMillis;
+            this.handoverCallback = callback;
+            return this;
+        }
+
+        /**
+         * <p>Callback when one network matching the spec goes down, with its handle.</p>
+         * <p>Unlike {@link #whenLost(NetworkStateCallback)}, which only fires when the last
+         * matching network goes down, this fires for every matching network. v21 API only.</p>
+         *
+         * @param callback .
+         * @return .
+         */
+        public Builder whenNetworkLost(NetworkHandleCallback callback) {
+            whenNetworkLost = callback;
+            return this;
+        }
+
+        /**
+         * <p>Callback when the bandwidth, metered or validated state of a network matching the
+         * spec changes. v21 API only.</p>
+         * <p>Without {@link #bandwidthTiers(BandwidthTiers)} every reported change is delivered.</p>
+         *
+         * @param callback .
+         * @return .
+         */
+        @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+        public Builder whenCapabilitiesChanged(CapabilitiesCallback callback) {
+            whenCapabilitiesChanged = callback;
+            return this;
+        }
+
+        /**
+         * <p>Only deliver {@link #whenCapabilitiesChanged(CapabilitiesCallback)} for bandwidth
+         * changes that cross a tier boundary. Changes of the metered or validated state are
+         * always delivered.</p>
+         *
+         * @param tiers Bandwidth tiers
+         * @return .
+         */
+        public Builder bandwidthTiers(BandwidthTiers tiers) {
+            bandwidthTiers = tiers;
+            return this;
+        }
+
+        /**
+         * <p>Callback when the DNS servers, addresses, routes, HTTP proxy, MTU, domains or
+         * interface of a network matching the spec change. v21 API only.</p>
+         * <p>Updates are compared with the previous properties of the same network, and only
+         * delivered if one of these fields actually changed. See {@link LinkChange}.</p>
+         *
+         * @param callback .
+         * @return .
+         */
+        @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+        public Builder whenLinkPropertiesChanged(LinkChangeCallback callback) {
+            whenLinkPropertiesChanged = callback;
             return this;
         }
 
@@ -295,7 +1175,7 @@ public final class NetworkSpec {
          * @see #ifNotSupported(NetworkStateCallback)
          */
         public Builder ifSupported(NetworkStateCallback callback) {
-            ifSupported = callback;
+            callbacks[NetworkStatus.SUPPORTED.ordinal()] = callback;
             return this;
         }
 
@@ -309,36 +1189,18 @@ public final class NetworkSpec {
          * @see #ifSupported(NetworkStateCallback)
          */
         public Builder ifNotSupported(NetworkStateCallback callback) {
-            ifNotSupported = callback;
+            callbacks[NetworkStatus.NOT_SUPPORTED.ordinal()] = callback;
             return this;
         }
 
+        /**
+         * <p>Creates the spec. This does not call into the system; network support is detected
+         * when the spec is attached, see {@link #detectSupportInBackground()}.</p>
+         *
+         * @return .
+         */
         public NetworkSpec create() {
             assertMutable();
-            ConnectivityManager mgr
-                = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-
-            if (mgr != null) {
-                if (PlatformUtils.isLollipop()) {
-                    final Network[] networks = mgr.getAllNetworks();
-                    for (Network network : networks) {
-                        final NetworkInfo networkInfo = mgr.getNetworkInfo(network);
-                        // because >= v21 doesn't have corresponding API
-                        if (legacyNetworkType == networkInfo.getType()) {
-                            networkSupported = true;
-                            break;
-                        }
-                    }
-                    // Fallback to legacy checks as well just to be sure
-                    final NetworkInfo networkInfo = mgr.getNetworkInfo(legacyNetworkType);
-                    networkSupported = networkInfo != null;
-                } else {
-                    final NetworkInfo networkInfo = mgr.getNetworkInfo(legacyNetworkType);
-                    networkSupported = networkInfo != null;
-                }
-            } else {
-                networkSupported = false;
-            }
             mutable = false;
             return new NetworkSpec(this);
         }
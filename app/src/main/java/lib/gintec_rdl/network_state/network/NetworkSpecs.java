@@ -3,6 +3,8 @@ package lib.gintec_rdl.network_state.network;
 import android.net.NetworkCapabilities;
 import android.os.Build;
 
+import java.util.Collection;
+
 import androidx.annotation.RequiresApi;
 
 
@@ -44,4 +46,78 @@ public enum NetworkSpecs {
     }
 
     final int legacyType, v21Type;
+
+    /**
+     * @return Bit of this spec in a transport mask
+     */
+    int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param specs Network specifications
+     * @return Transport mask with a bit per spec, see {@link #mask()}
+     */
+    static int maskOf(Collection<NetworkSpecs> specs) {
+        int mask = 0;
+        for (NetworkSpecs spec : specs) {
+            mask |= spec.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * @param mask Transport mask
+     * @return The only transport in the mask, null if there are several or it is {@link #ANY_SPEC}
+     */
+    static NetworkSpecs single(int mask) {
+        if (Integer.bitCount(mask) != 1 || mask == ANY_SPEC.mask()) {
+            return null;
+        }
+        return values()[Integer.numberOfTrailingZeros(mask)];
+    }
+
+    /**
+     * @param legacyType Legacy {@link android.net.ConnectivityManager} network type
+     * @return The matching spec, null if none
+     */
+    static NetworkSpecs fromLegacyType(int legacyType) {
+        for (NetworkSpecs specs : values()) {
+            if (specs.legacyType == legacyType && specs != ANY_SPEC) {
+                return specs;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param v21Type {@link NetworkCapabilities} transport type
+     * @return The matching spec, null if none
+     */
+    static NetworkSpecs fromV21Type(int v21Type) {
+        for (NetworkSpecs specs : values()) {
+            if (specs.v21Type == v21Type && specs != ANY_SPEC) {
+                return specs;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param capabilities Network capabilities
+     * @return The spec of the first transport the capabilities have, null if none
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    static NetworkSpecs fromCapabilities(NetworkCapabilities capabilities) {
+        // VPN goes first as it runs on top of another transport
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_VPN)) {
+            return VPN_SPEC;
+        }
+        for (NetworkSpecs specs : values()) {
+            if (specs != ANY_SPEC && capabilities.hasTransport(specs.v21Type)) {
+                return specs;
+            }
+        }
+        return null;
+    }
 }
@@ -2,10 +2,24 @@ package lib.gintec_rdl.network_state.network;
 
 import android.content.Context;
 
+import java.util.Set;
+
 import lib.gintec_rdl.network_state.NetworkStateException;
 
 public interface NetworkState {
     static NetworkSpec.Builder of(NetworkSpecs specs, Context context) throws NetworkStateException {
         return new NetworkSpec.Builder(context, specs);
     }
+
+    /**
+     * Watches several transports through a single system registration. The spec is available
+     * while any of the transports is.
+     *
+     * @param specs   Transports to watch, e.g Wi-Fi and ethernet but not cellular
+     * @param context .
+     * @return Builder for the composite spec
+     */
+    static NetworkSpec.Builder of(Set<NetworkSpecs> specs, Context context) throws NetworkStateException {
+        return new NetworkSpec.Builder(context, specs);
+    }
 }
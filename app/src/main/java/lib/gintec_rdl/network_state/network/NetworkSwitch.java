@@ -0,0 +1,45 @@
+package lib.gintec_rdl.network_state.network;
+
+/**
+ * Detects switches between networks from consecutive snapshots of a listener
+ */
+final class NetworkSwitch {
+    private NetworkSwitch() {
+    }
+
+    /**
+     * Runs the switch hooks of the subscribers if the current snapshot is available on another
+     * network than the last available one. Losing the network in between does not reset it, so
+     * Wi-Fi, lost, then cellular is a switch.
+     *
+     * @param lastAvailable Last available snapshot, null if none
+     * @param current       New snapshot
+     * @param subscribers   Subscribers of the listener
+     * @return The new last available snapshot
+     */
+    static NetworkSnapshot detect(NetworkSnapshot lastAvailable, NetworkSnapshot current, NetworkSpec[] subscribers) {
+        return detect(lastAvailable, current, false, subscribers);
+    }
+
+    /**
+     * @param lastAvailable Last available snapshot, null if none
+     * @param current       New snapshot
+     * @param reconnected   Whether the listener knows the network changed although the snapshots
+     *                      apply to the same transport
+     * @param subscribers   Subscribers of the listener
+     * @return The new last available snapshot
+     * @see #detect(NetworkSnapshot, NetworkSnapshot, NetworkSpec[])
+     */
+    static NetworkSnapshot detect(NetworkSnapshot lastAvailable, NetworkSnapshot current, boolean reconnected,
+                                  NetworkSpec[] subscribers) {
+        if (!current.isAvailable()) {
+            return lastAvailable;
+        }
+        if (lastAvailable != null && (reconnected || !lastAvailable.isSameNetwork(current))) {
+            for (NetworkSpec spec : subscribers) {
+                spec.onNetworkSwitch(lastAvailable, current);
+            }
+        }
+        return current;
+    }
+}
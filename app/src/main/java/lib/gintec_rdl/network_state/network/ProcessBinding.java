@@ -0,0 +1,72 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Build;
+
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
+
+/**
+ * <p>Binds the process to a network, routing all of its traffic over it, with the API of the
+ * running platform. Lollipop and later only.</p>
+ * <p>All changes to the binding made by the library go through here and are serialized, so a
+ * temporary rebinding cannot undo a binding made concurrently.</p>
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+final class ProcessBinding {
+    private ProcessBinding() {
+    }
+
+    static ConnectivityManager connectivityManager(Context context) {
+        return (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Briefly binds the process to the network, then restores the previous binding
+     *
+     * @param mgr     Connectivity manager
+     * @param network Network to bind to
+     */
+    static synchronized void rebindThrough(ConnectivityManager mgr, Network network) {
+        final Network bound = bound(mgr);
+        if (!network.equals(bound)) {
+            bind(mgr, network);
+            bind(mgr, bound);
+        }
+    }
+
+    /**
+     * Unbinds the process, unless it was bound to another network since
+     *
+     * @param mgr     Connectivity manager
+     * @param network Network the process was bound to
+     */
+    static synchronized void unbind(ConnectivityManager mgr, Network network) {
+        if (network.equals(bound(mgr))) {
+            bind(mgr, null);
+        }
+    }
+
+    /**
+     * @param mgr Connectivity manager
+     * @return Network the process is bound to, null if none
+     */
+    @SuppressWarnings("deprecation")
+    private static Network bound(ConnectivityManager mgr) {
+        return PlatformUtils.isMarshmallow() ? mgr.getBoundNetworkForProcess()
+            : ConnectivityManager.getProcessDefaultNetwork();
+    }
+
+    /**
+     * @param mgr     Connectivity manager
+     * @param network Network to bind to, null to unbind
+     * @return Whether the binding succeeded
+     */
+    @SuppressWarnings("deprecation")
+    static synchronized boolean bind(ConnectivityManager mgr, Network network) {
+        return PlatformUtils.isMarshmallow() ? mgr.bindProcessToNetwork(network)
+            : ConnectivityManager.setProcessDefaultNetwork(network);
+    }
+}
@@ -0,0 +1,23 @@
+package lib.gintec_rdl.network_state.network;
+
+/**
+ * How a v21 listener registers with {@link android.net.ConnectivityManager}
+ */
+enum RegistrationMode {
+    /**
+     * Passively observe matching networks using
+     * {@link android.net.ConnectivityManager#registerNetworkCallback}. The system is not asked to
+     * bring up or keep any network alive.
+     */
+    OBSERVE,
+    /**
+     * Passively observe the system default network using
+     * {@link android.net.ConnectivityManager#registerDefaultNetworkCallback}
+     */
+    OBSERVE_DEFAULT,
+    /**
+     * Ask the system to bring up and keep a matching network alive using
+     * {@link android.net.ConnectivityManager#requestNetwork}
+     */
+    REQUEST
+}
@@ -0,0 +1,64 @@
+package lib.gintec_rdl.network_state.network;
+
+/**
+ * Copy-on-write table of the {@link NetworkSpec}s subscribed to a shared listener.
+ * <p>Writes happen on attach/detach only, so reads during event delivery are a single volatile
+ * load and never take a lock.</p>
+ */
+final class SubscriberTable {
+    private static final NetworkSpec[] EMPTY = new NetworkSpec[0];
+
+    private volatile NetworkSpec[] subscribers = EMPTY;
+
+    /**
+     * @param spec Spec to add
+     * @return True if the spec was added, false if it was already subscribed
+     */
+    synchronized boolean add(NetworkSpec spec) {
+        final NetworkSpec[] current = subscribers;
+        for (NetworkSpec subscriber : current) {
+            if (subscriber == spec) {
+                return false;
+            }
+        }
+        final NetworkSpec[] updated = new NetworkSpec[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = spec;
+        subscribers = updated;
+        return true;
+    }
+
+    /**
+     * @param spec Spec to remove
+     * @return Number of remaining subscribers
+     */
+    synchronized int remove(NetworkSpec spec) {
+        final NetworkSpec[] current = subscribers;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == spec) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return current.length;
+        }
+        if (current.length == 1) {
+            subscribers = EMPTY;
+            return 0;
+        }
+        final NetworkSpec[] updated = new NetworkSpec[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        subscribers = updated;
+        return updated.length;
+    }
+
+    /**
+     * @return Current subscribers. The returned array must not be modified.
+     */
+    NetworkSpec[] get() {
+        return subscribers;
+    }
+}
@@ -0,0 +1,118 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
+
+/**
+ * <p>Detects whether the device supports a network type.</p>
+ * <p>Results are cached for the lifetime of the process per {@link NetworkSpecs} value, so the
+ * system is queried at most once per value no matter how many specs are created. A set of
+ * transports is supported if any of them is.</p>
+ */
+final class SupportDetector {
+    static final int UNKNOWN = 0;
+    static final int SUPPORTED = 1;
+    static final int NOT_SUPPORTED = 2;
+
+    private static final AtomicIntegerArray cache = new AtomicIntegerArray(NetworkSpecs.values().length);
+
+    interface Callback {
+        void onDetected(boolean supported);
+    }
+
+    private SupportDetector() {
+    }
+
+    /**
+     * @param transports Transport mask, see {@link NetworkSpecs#mask()}
+     * @return Cached result, one of {@link #UNKNOWN}, {@link #SUPPORTED} or {@link #NOT_SUPPORTED}
+     */
+    static int cached(int transports) {
+        int result = NOT_SUPPORTED;
+        for (NetworkSpecs specs : NetworkSpecs.values()) {
+            if ((transports & specs.mask()) != 0) {
+                final int cached = cache.get(specs.ordinal());
+                if (cached == SUPPORTED) {
+                    return SUPPORTED;
+                } else if (cached == UNKNOWN) {
+                    result = UNKNOWN;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached result, querying the system on the calling thread if there is none
+     *
+     * @param context    .
+     * @param transports Transport mask, see {@link NetworkSpecs#mask()}
+     * @return Whether any of the transports is supported
+     */
+    static boolean detect(Context context, int transports) {
+        for (NetworkSpecs specs : NetworkSpecs.values()) {
+            if ((transports & specs.mask()) != 0 && detect(context, specs)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean detect(Context context, NetworkSpecs specs) {
+        final int cached = cache.get(specs.ordinal());
+        if (cached != UNKNOWN) {
+            return cached == SUPPORTED;
+        }
+        final boolean supported = query(context, specs);
+        cache.set(specs.ordinal(), supported ? SUPPORTED : NOT_SUPPORTED);
+        return supported;
+    }
+
+    /**
+     * Detects support on the library's background thread and reports the result on the main
+     * thread
+     *
+     * @param context    .
+     * @param transports Transport mask, see {@link NetworkSpecs#mask()}
+     * @param callback   Receives the result on the main thread
+     */
+    static void detectAsync(Context context, int transports, Callback callback) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Handler(DispatchExecutors.backgroundLooper()).post(() -> {
+            final boolean supported = detect(context, transports);
+            mainHandler.post(() -> callback.onDetected(supported));
+        });
+    }
+
+    // NetworkInfo is deprecated, but the only way to tell whether a transport exists at all
+    @SuppressWarnings("deprecation")
+    private static boolean query(Context context, NetworkSpecs specs) {
+        final ConnectivityManager mgr = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (mgr == null) {
+            return false;
+        }
+        if (specs == NetworkSpecs.ANY_SPEC) {
+            // Networking itself is supported if there's a connectivity service
+            return true;
+        }
+        if (PlatformUtils.isLollipop()) {
+            for (Network network : mgr.getAllNetworks()) {
+                final NetworkInfo networkInfo = mgr.getNetworkInfo(network);
+                // because >= v21 doesn't have corresponding API
+                if (networkInfo != null && specs.legacyType == networkInfo.getType()) {
+                    return true;
+                }
+            }
+        }
+        // Fallback to legacy checks as well, e.g for networks that are currently down
+        return mgr.getNetworkInfo(specs.legacyType) != null;
+    }
+}
@@ -8,68 +8,191 @@ import android.net.Network;
 import android.net.NetworkCapabilities;
 import android.net.NetworkRequest;
 import android.os.Build;
+import android.os.SystemClock;
+
+import lib.gintec_rdl.network_state.core.LiveNetworkSet;
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+import lib.gintec_rdl.network_state.utils.PlatformUtils;
 
 @TargetApi(Build.VERSION_CODES.LOLLIPOP)
 final class V21NetworkChangeListener extends ConnectivityManager.NetworkCallback implements NetworkChangeListener {
-    private final NetworkSpec networkSpec;
     private final NetworkRequest networkRequest;
+    private final RegistrationMode mode;
+    private final SubscriberTable subscribers = new SubscriberTable();
+    private final NetworkSpecs transport;
+    /**
+     * Aggregates the matching networks into one state and fans it out to subscribers
+     */
+    private final NetworkStateMachine<Network> machine;
+    /**
+     * Last link properties of each network
+     */
+    private final LiveNetworkSet<LinkProperties> linkProperties = new LiveNetworkSet<>();
+    /**
+     * Last capabilities of each network, applied when the snapshot moves to an already live network
+     */
+    private final LiveNetworkSet<NetworkCapabilities> capabilities = new LiveNetworkSet<>();
 
     private boolean registered;
 
-    V21NetworkChangeListener(NetworkSpec networkSpec) {
-        this.networkSpec = networkSpec;
-        NetworkRequest.Builder builder;
-        if (networkSpec.builder.v21NetworkType == NetworkSpecs.ANY_SPEC.v21Type) {
-            builder = new NetworkRequest.Builder()
-                .addTransportType(NetworkCapabilities.TRANSPORT_WIFI)
-                .addTransportType(NetworkCapabilities.TRANSPORT_VPN)
-                .addTransportType(NetworkCapabilities.TRANSPORT_ETHERNET)
-                .addTransportType(NetworkCapabilities.TRANSPORT_BLUETOOTH)
-                .addTransportType(NetworkCapabilities.TRANSPORT_CELLULAR);
-        } else {
-            builder = new NetworkRequest.Builder()
-                .addTransportType(networkSpec.builder.v21NetworkType);
-        }
+    /**
+     * Latest known state, updated on every transition of {@link #machine}
+     */
+    private volatile NetworkSnapshot snapshot = NetworkSnapshot.UNKNOWN;
+    /**
+     * Last available snapshot, to detect network switches. Guarded by {@link #machine}.
+     */
+    private NetworkSnapshot lastAvailable;
 
-        this.networkRequest = builder
-            .removeCapability(NetworkCapabilities.NET_CAPABILITY_NOT_VPN)
-            .build();
+    /**
+     * @param transports   Transports to match, see {@link NetworkSpecs#mask()}
+     * @param capabilities Required capabilities, a bit per capability
+     * @param mode         Registration mode
+     */
+    V21NetworkChangeListener(int transports, long capabilities, RegistrationMode mode) {
+        this.mode = mode;
+        this.transport = NetworkSpecs.single(transports);
+        this.machine = new NetworkStateMachine<>(mode == RegistrationMode.OBSERVE_DEFAULT, this::updateSnapshot);
+        // One request for all transports, any of them satisfies it
+        final NetworkRequest.Builder builder = new NetworkRequest.Builder();
+        for (NetworkSpecs specs : NetworkSpecs.values()) {
+            if (specs != NetworkSpecs.ANY_SPEC
+                && ((transports & specs.mask()) != 0 || (transports & NetworkSpecs.ANY_SPEC.mask()) != 0)) {
+                builder.addTransportType(specs.v21Type);
+            }
+        }
+        builder.removeCapability(NetworkCapabilities.NET_CAPABILITY_NOT_VPN);
+        for (int capability = 0; capabilities != 0; capability++, capabilities >>>= 1) {
+            if ((capabilities & 1) != 0) {
+                builder.addCapability(capability);
+            }
+        }
+        this.networkRequest = builder.build();
     }
 
     @Override
     public void onAvailable(Network network) {
-        callback(networkSpec.builder.whenAvailable, networkSpec);
+        machine.onAvailable(PlatformUtils.networkId(network), network);
     }
 
     @Override
     public void onLosing(Network network, int maxMsToLive) {
-        callback(networkSpec.builder.whenLosing, networkSpec);
+        machine.onLosing(PlatformUtils.networkId(network), network, maxMsToLive);
     }
 
     @Override
     public void onLost(Network network) {
-        callback(networkSpec.builder.whenLost, networkSpec);
+        final long id = PlatformUtils.networkId(network);
+        synchronized (linkProperties) {
+            linkProperties.remove(id);
+        }
+        synchronized (capabilities) {
+            capabilities.remove(id);
+        }
+        machine.onLost(id);
     }
 
     @Override
     public void onUnavailable() {
-        callback(networkSpec.builder.whenNotAvailable, networkSpec);
+        machine.onUnavailable();
     }
 
     @Override
     public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
-        // TODO Dispatch caps change event
+        synchronized (capabilities) {
+            capabilities.add(PlatformUtils.networkId(network), networkCapabilities);
+        }
+        final boolean metered = isMetered(networkCapabilities);
+        final boolean validated = isValidated(networkCapabilities);
+        final int downstreamKbps = networkCapabilities.getLinkDownstreamBandwidthKbps();
+        final int upstreamKbps = networkCapabilities.getLinkUpstreamBandwidthKbps();
+        // Snapshot first, so specs read the new capabilities
+        final NetworkSnapshot current = snapshot;
+        if (network.equals(current.getNetwork())) {
+            final NetworkSpecs actualTransport = transport != null ? transport : NetworkSpecs.fromCapabilities(networkCapabilities);
+            if (metered != current.isMetered() || actualTransport != current.getTransport()
+                || validated != current.isValidated()) {
+                snapshot = new NetworkSnapshot(current.getStatus(), actualTransport, metered, validated,
+                    network, current.getTimestamp());
+            }
+        }
+
+        for (NetworkSpec spec : subscribers.get()) {
+            spec.onCapabilitiesChanged(network, downstreamKbps, upstreamKbps, metered, validated);
+        }
+    }
+
+    @Override
+    public void onLinkPropertiesChanged(Network network, LinkProperties properties) {
+        final LinkProperties previous;
+        synchronized (linkProperties) {
+            final long id = PlatformUtils.networkId(network);
+            previous = linkProperties.get(id);
+            linkProperties.add(id, properties);
+        }
+        if (previous != null) {
+            final LinkChange change = LinkChange.diff(previous, properties);
+            if (change != null) {
+                for (NetworkSpec spec : subscribers.get()) {
+                    spec.onLinkPropertiesChanged(network, change);
+                }
+            }
+        }
     }
 
     @Override
-    public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
-        // TODO Dispatch link change event
+    public void onInitialDeadline() {
+        machine.onInitialDeadline();
+    }
+
+    @Override
+    public NetworkSnapshot snapshot() {
+        return snapshot;
+    }
+
+    private void updateSnapshot(NetworkStatus status, Network network) {
+        final NetworkSnapshot current = snapshot;
+        if (network != null && network.equals(current.getNetwork())) {
+            // Another network coming or going leaves the state unchanged
+            if (status != current.getStatus()) {
+                snapshot = new NetworkSnapshot(status, current.getTransport(), current.isMetered(),
+                    current.isValidated(), network, SystemClock.uptimeMillis());
+            }
+        } else {
+            final NetworkCapabilities known;
+            synchronized (capabilities) {
+                known = network != null ? capabilities.get(PlatformUtils.networkId(network)) : null;
+            }
+            if (known != null) {
+                // Moved to a network that is already live, e.g when the tracked one is lost
+                snapshot = new NetworkSnapshot(status, transport != null ? transport : NetworkSpecs.fromCapabilities(known),
+                    isMetered(known), isValidated(known), network, SystemClock.uptimeMillis());
+            } else {
+                // Metered, unvalidated and, for composite specs, of unknown transport until the
+                // capabilities arrive
+                snapshot = new NetworkSnapshot(status, transport, true, !PlatformUtils.isMarshmallow(), network,
+                    SystemClock.uptimeMillis());
+            }
+        }
+        lastAvailable = NetworkSwitch.detect(lastAvailable, snapshot, subscribers.get());
     }
 
     @Override
     public void registerSelf(Context context) {
         synchronized (this) {
-            getConnectivityManager(context).requestNetwork(networkRequest, this);
+            final ConnectivityManager mgr = getConnectivityManager(context);
+            switch (mode) {
+                case REQUEST:
+                    mgr.requestNetwork(networkRequest, this);
+                    break;
+                case OBSERVE_DEFAULT:
+                    mgr.registerDefaultNetworkCallback(this);
+                    break;
+                default:
+                    mgr.registerNetworkCallback(networkRequest, this);
+                    break;
+            }
             registered = true;
         }
     }
@@ -79,9 +202,29 @@ final class V21NetworkChangeListener extends ConnectivityManager.NetworkCallback
         synchronized (this) {
             getConnectivityManager(context).unregisterNetworkCallback(this);
             registered = false;
+            snapshot = NetworkSnapshot.UNKNOWN;
+            machine.reset();
+            synchronized (machine) {
+                lastAvailable = null;
+            }
+            synchronized (linkProperties) {
+                linkProperties.clear();
+            }
+            synchronized (capabilities) {
+                capabilities.clear();
+            }
         }
     }
 
+    private static boolean isMetered(NetworkCapabilities capabilities) {
+        return !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+    }
+
+    private static boolean isValidated(NetworkCapabilities capabilities) {
+        // Validation is only reported from Marshmallow on, assume it before like the snapshot
+        return !PlatformUtils.isMarshmallow() || capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+
     private ConnectivityManager getConnectivityManager(Context c) {
         return (ConnectivityManager) c.getSystemService(Context.CONNECTIVITY_SERVICE);
     }
@@ -92,4 +235,17 @@ final class V21NetworkChangeListener extends ConnectivityManager.NetworkCallback
             return registered;
         }
     }
+
+    @Override
+    public void subscribe(NetworkSpec spec) {
+        // Late subscribers get the current state and live networks replayed
+        subscribers.add(spec);
+        machine.subscribe(spec.stateSubscriber);
+    }
+
+    @Override
+    public int unsubscribe(NetworkSpec spec) {
+        subscribers.remove(spec);
+        return machine.unsubscribe(spec.stateSubscriber);
+    }
 }
@@ -1,5 +1,7 @@
 package lib.gintec_rdl.network_state.utils;
 
+import android.annotation.TargetApi;
+import android.net.Network;
 import android.os.Build;
 
 public final class PlatformUtils {
@@ -9,4 +11,21 @@ public final class PlatformUtils {
     public static boolean isLollipop() {
         return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
     }
+
+    public static boolean isMarshmallow() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * @param network Network
+     * @return Identifier that is stable for the lifetime of the network
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public static long networkId(Network network) {
+        if (isMarshmallow()) {
+            return network.getNetworkHandle();
+        }
+        // Network.hashCode() is derived from the netId before M
+        return network.hashCode();
+    }
 }
@@ -0,0 +1,124 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowConnectivityManager;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.attach;
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static lib.gintec_rdl.network_state.network.TestNetworks.recordingSpec;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@SuppressWarnings("deprecation")
+public class LegacyNetworkChangeListenerTest {
+    private final ShadowConnectivityManager connectivity = Shadows.shadowOf(
+        (ConnectivityManager) context().getSystemService(Context.CONNECTIVITY_SERVICE));
+    private final List<NetworkStatus> delivered = new ArrayList<>();
+
+    @Test
+    public void classifiesActiveNetworkAndDropsRepeatedBroadcasts() {
+        final LegacyNetworkChangeListener listener = listen(NetworkSpecs.WIFI_SPEC);
+
+        broadcast(listener, wifi(NetworkInfo.DetailedState.CONNECTED));
+        final NetworkSnapshot connected = listener.snapshot();
+        broadcast(listener, wifi(NetworkInfo.DetailedState.CONNECTED));
+        assertSame(connected, listener.snapshot());
+        broadcast(listener, null);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE, NetworkStatus.NOT_AVAILABLE), delivered);
+        assertEquals(NetworkSpecs.WIFI_SPEC, connected.getTransport());
+        assertFalse(connected.isMetered());
+        assertEquals(NetworkStatus.NOT_AVAILABLE, listener.snapshot().getStatus());
+    }
+
+    @Test
+    public void reportsWatchedTransportWhileAnotherIsActive() {
+        final LegacyNetworkChangeListener listener = listen(NetworkSpecs.WIFI_SPEC);
+        connectivity.setNetworkInfo(ConnectivityManager.TYPE_WIFI, wifi(NetworkInfo.DetailedState.DISCONNECTING));
+
+        broadcast(listener, mobile(NetworkInfo.DetailedState.CONNECTED));
+        connectivity.setNetworkInfo(ConnectivityManager.TYPE_WIFI, wifi(NetworkInfo.DetailedState.DISCONNECTED));
+        broadcast(listener, mobile(NetworkInfo.DetailedState.CONNECTED));
+
+        assertEquals(Arrays.asList(NetworkStatus.LOSING, NetworkStatus.LOST), delivered);
+        assertEquals(NetworkSpecs.WIFI_SPEC, listener.snapshot().getTransport());
+        assertTrue(listener.snapshot().isMetered());
+    }
+
+    @Test
+    public void reportsSwitchBetweenAccessPointsOfOneTransport() {
+        final List<String> switches = new ArrayList<>();
+        final LegacyNetworkChangeListener listener = listen(NetworkSpecs.WIFI_SPEC);
+        attach(listener, new NetworkSpec.Builder(context(), NetworkSpecs.WIFI_SPEC)
+            .onNetworkSwitch((spec, previous, current) -> switches.add(previous.getTransport() + ">" + current.getTransport()))
+            .create());
+
+        broadcast(listener, wifi(NetworkInfo.DetailedState.CONNECTED, "\"home\""));
+        final NetworkSnapshot home = listener.snapshot();
+        broadcast(listener, wifi(NetworkInfo.DetailedState.CONNECTED, "\"home\""));
+        broadcast(listener, wifi(NetworkInfo.DetailedState.CONNECTED, "\"office\""));
+
+        assertEquals(Arrays.asList(NetworkSpecs.WIFI_SPEC + ">" + NetworkSpecs.WIFI_SPEC), switches);
+        assertNotSame(home, listener.snapshot());
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), delivered);
+    }
+
+    private LegacyNetworkChangeListener listen(NetworkSpecs specs) {
+        final LegacyNetworkChangeListener listener = new LegacyNetworkChangeListener(specs.mask());
+        attach(listener, recordingSpec(specs, delivered));
+        return listener;
+    }
+
+    private void broadcast(LegacyNetworkChangeListener listener, NetworkInfo active) {
+        connectivity.setActiveNetworkInfo(active);
+        listener.onReceive(context(), new Intent(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    static NetworkInfo wifi(NetworkInfo.DetailedState state) {
+        return ShadowNetworkInfo.newInstance(state, ConnectivityManager.TYPE_WIFI, 0, true, stateOf(state));
+    }
+
+    private static NetworkInfo wifi(NetworkInfo.DetailedState state, String ssid) {
+        final NetworkInfo result = wifi(state);
+        result.setDetailedState(state, null, ssid);
+        return result;
+    }
+
+    static NetworkInfo mobile(NetworkInfo.DetailedState state) {
+        return ShadowNetworkInfo.newInstance(state, ConnectivityManager.TYPE_MOBILE, 0, true, stateOf(state));
+    }
+
+    private static NetworkInfo.State stateOf(NetworkInfo.DetailedState state) {
+        switch (state) {
+            case CONNECTED:
+                return NetworkInfo.State.CONNECTED;
+            case DISCONNECTING:
+                return NetworkInfo.State.DISCONNECTING;
+            case DISCONNECTED:
+                return NetworkInfo.State.DISCONNECTED;
+            default:
+                return NetworkInfo.State.CONNECTING;
+        }
+    }
+}
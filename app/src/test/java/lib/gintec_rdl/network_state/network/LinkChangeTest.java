@@ -0,0 +1,63 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.net.LinkProperties;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.Collections;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.linkProperties;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class LinkChangeTest {
+
+    @Test
+    public void unchangedPropertiesAreNotReported() {
+        assertNull(LinkChange.diff(linkProperties("wlan0"), linkProperties("wlan0")));
+    }
+
+    @Test
+    public void reportsInterfaceNameChange() {
+        final LinkProperties previous = linkProperties("wlan0");
+        final LinkProperties current = linkProperties("rmnet0");
+        final LinkChange change = LinkChange.diff(previous, current);
+
+        assertEquals(LinkChange.INTERFACE_NAME, change.getChangedFields());
+        assertSame(previous, change.getPrevious());
+        assertSame(current, change.getCurrent());
+    }
+
+    @Test
+    public void reportsDnsAndDomainChanges() throws Exception {
+        final LinkProperties current = linkProperties("wlan0");
+        ReflectionHelpers.callInstanceMethod(current, "setDnsServers", ClassParameter.from(Collection.class,
+            Collections.singletonList(InetAddress.getByAddress(new byte[]{8, 8, 8, 8}))));
+        ReflectionHelpers.callInstanceMethod(current, "setDomains", ClassParameter.from(String.class, "example.com"));
+        final LinkChange change = LinkChange.diff(linkProperties("wlan0"), current);
+
+        assertTrue(change.has(LinkChange.DNS_SERVERS));
+        assertTrue(change.has(LinkChange.DOMAINS));
+        assertFalse(change.has(LinkChange.INTERFACE_NAME | LinkChange.ROUTES));
+    }
+
+    @Test
+    public void ignoresMtuBeforeQ() {
+        final LinkProperties current = linkProperties("wlan0");
+        ReflectionHelpers.callInstanceMethod(current, "setMtu", ClassParameter.from(int.class, 1280));
+
+        assertNull(LinkChange.diff(linkProperties("wlan0"), current));
+    }
+}
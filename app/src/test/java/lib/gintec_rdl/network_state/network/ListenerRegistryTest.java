@@ -0,0 +1,147 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.net.NetworkCapabilities;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.Scheduler;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ListenerRegistryTest {
+    /**
+     * Tasks scheduled by the registry, run by the test
+     */
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final ListenerRegistry registry = new ListenerRegistry(new Scheduler() {
+        @Override
+        public long now() {
+            return 0;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            scheduled.add(task);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            scheduled.remove(task);
+        }
+    });
+
+    @Test
+    public void packsTransportsModeAndCapabilitiesIntoKey() {
+        final int wifi = NetworkSpecs.WIFI_SPEC.mask();
+
+        assertEquals(wifi | (RegistrationMode.OBSERVE.ordinal() << ListenerRegistry.MODE_SHIFT),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.WIFI_SPEC).create()));
+        assertEquals(wifi | (RegistrationMode.REQUEST.ordinal() << ListenerRegistry.MODE_SHIFT),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.WIFI_SPEC).request().create()));
+        // Legacy registrations ignore the mode and capabilities
+        assertEquals(ListenerRegistry.LEGACY_FLAG | wifi,
+            ListenerRegistry.keyOf(builder(NetworkSpecs.WIFI_SPEC).legacy().request()
+                .requireCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED).create()));
+
+        final long capabilities = ListenerRegistry.keyOf(builder(NetworkSpecs.WIFI_SPEC)
+            .requireCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)
+            .requireCapability(ListenerRegistry.CAPABILITY_BITS - 1).create());
+        assertEquals((1L << NetworkCapabilities.NET_CAPABILITY_NOT_METERED) | (1L << (ListenerRegistry.CAPABILITY_BITS - 1)),
+            capabilities >>> ListenerRegistry.CAPABILITIES_SHIFT);
+        assertEquals(wifi, capabilities & ((1L << ListenerRegistry.CAPABILITIES_SHIFT) - 1));
+    }
+
+    @Test
+    public void keysDoNotCollide() {
+        final long[] keys = {
+            ListenerRegistry.keyOf(builder(NetworkSpecs.ANY_SPEC).create()),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.ANY_SPEC).observeDefaultNetwork().create()),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.ANY_SPEC).request().create()),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.ANY_SPEC).legacy().create()),
+            ListenerRegistry.keyOf(builder(NetworkSpecs.ANY_SPEC)
+                .requireCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).create()),
+        };
+        for (int i = 0; i < keys.length; i++) {
+            for (int j = i + 1; j < keys.length; j++) {
+                assertNotEquals(keys[i], keys[j]);
+            }
+        }
+    }
+
+    @Test
+    public void specsWithSameRequirementsShareListener() {
+        final NetworkSpec first = builder(NetworkSpecs.WIFI_SPEC).create();
+        final NetworkSpec second = builder(NetworkSpecs.WIFI_SPEC).create();
+        final NetworkSpec cellular = builder(NetworkSpecs.MOBILE_SPEC).create();
+
+        final NetworkChangeListener listener = registry.subscribe(first);
+        assertSame(listener, registry.subscribe(second));
+        assertNotSame(listener, registry.subscribe(cellular));
+        assertTrue(listener.isRegistered());
+
+        registry.unsubscribe(first);
+        assertTrue(listener.isRegistered());
+        registry.unsubscribe(second);
+        assertFalse(listener.isRegistered());
+    }
+
+    @Test
+    public void keepsRegistrationDuringGracePeriod() {
+        final NetworkSpec spec = builder(NetworkSpecs.WIFI_SPEC).unregisterGracePeriod(1000).create();
+
+        final NetworkChangeListener listener = registry.subscribe(spec);
+        registry.unsubscribe(spec);
+        assertTrue(listener.isRegistered());
+        assertEquals(1, scheduled.size());
+
+        // Resubscribing within the grace period cancels the unregistration
+        assertSame(listener, registry.subscribe(spec));
+        assertEquals(0, scheduled.size());
+        assertTrue(listener.isRegistered());
+    }
+
+    @Test
+    public void unregistersAfterGracePeriod() {
+        final NetworkSpec spec = builder(NetworkSpecs.WIFI_SPEC).unregisterGracePeriod(1000).create();
+
+        final NetworkChangeListener listener = registry.subscribe(spec);
+        registry.unsubscribe(spec);
+        scheduled.remove(0).run();
+
+        assertFalse(listener.isRegistered());
+        assertNotSame(listener, registry.subscribe(spec));
+    }
+
+    @Test
+    public void staleUnregistrationDoesNotTearDownNewSubscription() {
+        final NetworkSpec spec = builder(NetworkSpecs.WIFI_SPEC).unregisterGracePeriod(1000).create();
+
+        final NetworkChangeListener listener = registry.subscribe(spec);
+        registry.unsubscribe(spec);
+        final Runnable stale = scheduled.get(0);
+        registry.subscribe(spec);
+        // Already dequeued by the scheduler when the spec resubscribed
+        stale.run();
+
+        assertTrue(listener.isRegistered());
+        assertSame(listener, registry.subscribe(builder(NetworkSpecs.WIFI_SPEC).create()));
+    }
+
+    private static NetworkSpec.Builder builder(NetworkSpecs specs) {
+        return new NetworkSpec.Builder(context(), specs);
+    }
+}
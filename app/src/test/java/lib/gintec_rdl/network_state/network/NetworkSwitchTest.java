@@ -0,0 +1,80 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.net.Network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.attach;
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static lib.gintec_rdl.network_state.network.TestNetworks.network;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class NetworkSwitchTest {
+    private final Network wifi = network(100);
+    private final Network cell = network(101);
+    private final List<String> switches = new ArrayList<>();
+    private final NetworkSpec spec = new NetworkSpec.Builder(context(), NetworkSpecs.ANY_SPEC)
+        .onNetworkSwitch((networkSpec, previous, current) -> switches.add(previous.getNetwork() + ">" + current.getNetwork()))
+        .create();
+    private final NetworkSpec[] subscribers = {spec};
+
+    @Test
+    public void firstAvailableSnapshotIsNotASwitch() {
+        final NetworkSnapshot available = snapshot(NetworkStatus.AVAILABLE, wifi);
+
+        assertSame(available, NetworkSwitch.detect(null, available, subscribers));
+        assertEquals(0, switches.size());
+    }
+
+    @Test
+    public void lossKeepsLastAvailable() {
+        final NetworkSnapshot available = snapshot(NetworkStatus.AVAILABLE, wifi);
+
+        assertSame(available, NetworkSwitch.detect(available, snapshot(NetworkStatus.LOST, wifi), subscribers));
+        assertSame(available, NetworkSwitch.detect(available, snapshot(NetworkStatus.LOST, null), subscribers));
+        assertEquals(0, switches.size());
+    }
+
+    @Test
+    public void availableOnAnotherNetworkIsASwitch() {
+        final NetworkSnapshot onWifi = snapshot(NetworkStatus.AVAILABLE, wifi);
+        final NetworkSnapshot stillOnWifi = snapshot(NetworkStatus.AVAILABLE, wifi);
+        final NetworkSnapshot onCell = snapshot(NetworkStatus.AVAILABLE, cell);
+
+        assertSame(stillOnWifi, NetworkSwitch.detect(onWifi, stillOnWifi, subscribers));
+        assertSame(onCell, NetworkSwitch.detect(stillOnWifi, onCell, subscribers));
+        assertEquals(Arrays.asList(wifi + ">" + cell), switches);
+    }
+
+    @Test
+    public void listenerReportsSwitchAcrossLoss() {
+        final V21NetworkChangeListener listener = new V21NetworkChangeListener(NetworkSpecs.ANY_SPEC.mask(), 0,
+            RegistrationMode.OBSERVE);
+        attach(listener, spec);
+
+        listener.onAvailable(wifi);
+        listener.onLost(wifi);
+        listener.onAvailable(wifi);
+        listener.onLost(wifi);
+        listener.onAvailable(cell);
+
+        // Wi-Fi coming back is not a switch, cellular after Wi-Fi is, even with a loss in between
+        assertEquals(Arrays.asList(wifi + ">" + cell), switches);
+    }
+
+    private static NetworkSnapshot snapshot(NetworkStatus status, Network network) {
+        return new NetworkSnapshot(status, null, true, true, network, 0);
+    }
+}
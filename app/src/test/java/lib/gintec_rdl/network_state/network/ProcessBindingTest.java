@@ -0,0 +1,66 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.attach;
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static lib.gintec_rdl.network_state.network.TestNetworks.network;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ProcessBindingTest {
+    private final ConnectivityManager connectivityManager =
+        (ConnectivityManager) context().getSystemService(Context.CONNECTIVITY_SERVICE);
+    private final V21NetworkChangeListener listener = new V21NetworkChangeListener(NetworkSpecs.ANY_SPEC.mask(),
+        0, RegistrationMode.OBSERVE);
+    private final NetworkSpec spec = new NetworkSpec.Builder(context(), NetworkSpecs.ANY_SPEC).create();
+    private final Network wifi = network(100);
+    private final Network cell = network(101);
+
+    @Test
+    public void bindingIsReleasedWhenNetworkIsLost() {
+        attach(listener, spec);
+        listener.onAvailable(wifi);
+        listener.onAvailable(cell);
+
+        assertTrue(spec.bindProcess());
+        assertEquals(wifi, connectivityManager.getBoundNetworkForProcess());
+
+        listener.onLost(cell);
+        assertEquals(wifi, connectivityManager.getBoundNetworkForProcess());
+        listener.onLost(wifi);
+        assertNull(connectivityManager.getBoundNetworkForProcess());
+    }
+
+    @Test
+    public void bindingMadeElsewhereIsKept() {
+        attach(listener, spec);
+        listener.onAvailable(wifi);
+        assertTrue(spec.bindProcess());
+
+        // The app rebinds the process itself
+        ProcessBinding.bind(connectivityManager, cell);
+        listener.onLost(wifi);
+
+        assertEquals(cell, connectivityManager.getBoundNetworkForProcess());
+    }
+
+    @Test
+    public void cannotBindWithoutNetwork() {
+        attach(listener, spec);
+
+        assertFalse(spec.bindProcess());
+        assertNull(connectivityManager.getBoundNetworkForProcess());
+    }
+}
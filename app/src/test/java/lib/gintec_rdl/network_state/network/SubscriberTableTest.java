@@ -0,0 +1,69 @@
+package lib.gintec_rdl.network_state.network;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SubscriberTableTest {
+    private final SubscriberTable table = new SubscriberTable();
+    private final NetworkSpec first = spec();
+    private final NetworkSpec second = spec();
+    private final NetworkSpec third = spec();
+
+    @Test
+    public void addsEachSpecOnce() {
+        assertTrue(table.add(first));
+        assertTrue(table.add(second));
+        assertFalse(table.add(first));
+
+        assertArrayEquals(new NetworkSpec[]{first, second}, table.get());
+    }
+
+    @Test
+    public void removesKeepingOrder() {
+        table.add(first);
+        table.add(second);
+        table.add(third);
+
+        assertEquals(2, table.remove(second));
+        assertEquals(2, table.remove(second));
+        assertArrayEquals(new NetworkSpec[]{first, third}, table.get());
+        assertEquals(1, table.remove(first));
+        assertEquals(0, table.remove(third));
+        assertEquals(0, table.get().length);
+    }
+
+    @Test
+    public void changesDuringIterationDoNotAffectIteratedArray() {
+        table.add(first);
+        table.add(second);
+
+        final List<NetworkSpec> visited = new ArrayList<>();
+        for (NetworkSpec spec : table.get()) {
+            // A spec unsubscribing another and subscribing a new one while events are delivered
+            table.remove(second);
+            table.add(third);
+            visited.add(spec);
+        }
+
+        assertEquals(Arrays.asList(first, second), visited);
+        assertArrayEquals(new NetworkSpec[]{first, third}, table.get());
+    }
+
+    private static NetworkSpec spec() {
+        return new NetworkSpec.Builder(context(), NetworkSpecs.WIFI_SPEC).create();
+    }
+}
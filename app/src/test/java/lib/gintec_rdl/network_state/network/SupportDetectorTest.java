@@ -0,0 +1,45 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowConnectivityManager;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.context;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@SuppressWarnings("deprecation")
+public class SupportDetectorTest {
+    private final ShadowConnectivityManager connectivity = Shadows.shadowOf(
+        (ConnectivityManager) context().getSystemService(Context.CONNECTIVITY_SERVICE));
+
+    @Test
+    public void detectsOncePerTransport() {
+        final int wifi = NetworkSpecs.WIFI_SPEC.mask();
+        final int bluetooth = NetworkSpecs.BLUETOOTH_SPEC.mask();
+        connectivity.setNetworkInfo(ConnectivityManager.TYPE_WIFI,
+            LegacyNetworkChangeListenerTest.wifi(NetworkInfo.DetailedState.DISCONNECTED));
+
+        assertEquals(SupportDetector.UNKNOWN, SupportDetector.cached(NetworkSpecs.ETHERNET_SPEC.mask()));
+        assertTrue(SupportDetector.detect(context(), wifi));
+        assertFalse(SupportDetector.detect(context(), bluetooth));
+        assertEquals(SupportDetector.SUPPORTED, SupportDetector.cached(wifi));
+        assertEquals(SupportDetector.NOT_SUPPORTED, SupportDetector.cached(bluetooth));
+        // A composite spec is supported if any of its transports is
+        assertEquals(SupportDetector.SUPPORTED, SupportDetector.cached(wifi | bluetooth));
+
+        // Cached results do not query the system again
+        connectivity.setNetworkInfo(ConnectivityManager.TYPE_WIFI, null);
+        assertTrue(SupportDetector.detect(context(), wifi));
+    }
+}
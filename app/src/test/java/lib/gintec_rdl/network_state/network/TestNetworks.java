@@ -0,0 +1,76 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.content.Context;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowNetwork;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+/**
+ * Builds specs and the framework's network objects, whose setters are hidden, for listener tests
+ */
+final class TestNetworks {
+    private TestNetworks() {
+    }
+
+    /**
+     * @param specs     Watched transports
+     * @param delivered Receives the available, losing, lost and not available states delivered
+     *                  to the spec's callbacks, on the calling thread
+     * @return The spec
+     */
+    static NetworkSpec recordingSpec(NetworkSpecs specs, List<NetworkStatus> delivered) {
+        return new NetworkSpec.Builder(context(), specs)
+            .dispatchOn(Runnable::run)
+            .whenAvailable(spec -> delivered.add(NetworkStatus.AVAILABLE))
+            .whenLosing(spec -> delivered.add(NetworkStatus.LOSING))
+            .whenLost(spec -> delivered.add(NetworkStatus.LOST))
+            .whenNotAvailable(spec -> delivered.add(NetworkStatus.NOT_AVAILABLE))
+            .create();
+    }
+
+    /**
+     * Subscribes the spec to the listener like the registry does, without registering the
+     * listener with the system
+     */
+    static void attach(NetworkChangeListener listener, NetworkSpec spec) {
+        spec.onListenerAcquired(listener);
+        listener.subscribe(spec);
+    }
+
+    static Context context() {
+        return RuntimeEnvironment.application;
+    }
+
+    static Network network(int netId) {
+        return ShadowNetwork.newInstance(netId);
+    }
+
+    /**
+     * @param transport    Transport, one of the {@code NetworkCapabilities.TRANSPORT_} constants
+     * @param capabilities Capabilities, {@code NetworkCapabilities.NET_CAPABILITY_} constants
+     * @return The capabilities
+     */
+    static NetworkCapabilities capabilities(int transport, int... capabilities) {
+        final NetworkCapabilities result = ReflectionHelpers.callConstructor(NetworkCapabilities.class);
+        ReflectionHelpers.callInstanceMethod(result, "addTransportType", ClassParameter.from(int.class, transport));
+        for (int capability : capabilities) {
+            ReflectionHelpers.callInstanceMethod(result, "addCapability", ClassParameter.from(int.class, capability));
+        }
+        return result;
+    }
+
+    static LinkProperties linkProperties(String interfaceName) {
+        final LinkProperties result = ReflectionHelpers.callConstructor(LinkProperties.class);
+        ReflectionHelpers.callInstanceMethod(result, "setInterfaceName", ClassParameter.from(String.class, interfaceName));
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package lib.gintec_rdl.network_state.network;
+
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+import static lib.gintec_rdl.network_state.network.TestNetworks.attach;
+import static lib.gintec_rdl.network_state.network.TestNetworks.capabilities;
+import static lib.gintec_rdl.network_state.network.TestNetworks.network;
+import static lib.gintec_rdl.network_state.network.TestNetworks.recordingSpec;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class V21NetworkChangeListenerTest {
+    private final V21NetworkChangeListener listener = new V21NetworkChangeListener(NetworkSpecs.ANY_SPEC.mask(),
+        0, RegistrationMode.OBSERVE);
+    private final List<NetworkStatus> delivered = new ArrayList<>();
+
+    @Test
+    public void snapshotTakesCapabilitiesOfNewNetwork() {
+        final Network wifi = network(100);
+        listener.onAvailable(wifi);
+        listener.onCapabilitiesChanged(wifi, capabilities(NetworkCapabilities.TRANSPORT_WIFI,
+            NetworkCapabilities.NET_CAPABILITY_NOT_METERED, NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+
+        assertEquals(wifi, listener.snapshot().getNetwork());
+        assertEquals(NetworkSpecs.WIFI_SPEC, listener.snapshot().getTransport());
+        assertFalse(listener.snapshot().isMetered());
+        assertTrue(listener.snapshot().isValidated());
+    }
+
+    @Test
+    public void snapshotKeepsCapabilitiesWhenSwitchingToLiveNetwork() {
+        final Network wifi = network(100);
+        final Network cell = network(101);
+        listener.onAvailable(wifi);
+        listener.onCapabilitiesChanged(wifi, capabilities(NetworkCapabilities.TRANSPORT_WIFI,
+            NetworkCapabilities.NET_CAPABILITY_NOT_METERED));
+        listener.onAvailable(cell);
+        listener.onCapabilitiesChanged(cell, capabilities(NetworkCapabilities.TRANSPORT_CELLULAR,
+            NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+
+        listener.onLost(wifi);
+
+        final NetworkSnapshot snapshot = listener.snapshot();
+        assertEquals(NetworkStatus.AVAILABLE, snapshot.getStatus());
+        assertEquals(cell, snapshot.getNetwork());
+        assertEquals(NetworkSpecs.MOBILE_SPEC, snapshot.getTransport());
+        assertTrue(snapshot.isMetered());
+        assertTrue(snapshot.isValidated());
+    }
+
+    @Test
+    public void wifiFlappingDeliversEveryTransition() {
+        attach(listener, recordingSpec(NetworkSpecs.ANY_SPEC, delivered));
+        final Network wifi = network(100);
+
+        for (int i = 0; i < 50; i++) {
+            listener.onAvailable(wifi);
+            listener.onLost(wifi);
+        }
+
+        assertEquals(100, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals((i & 1) == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOST, delivered.get(i));
+        }
+        assertEquals(null, listener.snapshot().getNetwork());
+    }
+
+    @Test
+    public void cellularHandoverAfterLosingRecovers() {
+        attach(listener, recordingSpec(NetworkSpecs.ANY_SPEC, delivered));
+        final Network wifi = network(100);
+        final Network cell = network(101);
+
+        listener.onAvailable(wifi);
+        listener.onCapabilitiesChanged(wifi, capabilities(NetworkCapabilities.TRANSPORT_WIFI,
+            NetworkCapabilities.NET_CAPABILITY_NOT_METERED, NetworkCapabilities.NET_CAPABILITY_VALIDATED));
+        listener.onLosing(wifi, 3000);
+        listener.onAvailable(cell);
+        listener.onLost(wifi);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE, NetworkStatus.LOSING, NetworkStatus.AVAILABLE),
+            delivered);
+        assertEquals(cell, listener.snapshot().getNetwork());
+        assertEquals(NetworkStatus.AVAILABLE, listener.snapshot().getStatus());
+    }
+}
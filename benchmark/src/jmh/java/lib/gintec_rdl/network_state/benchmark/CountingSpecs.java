@@ -0,0 +1,77 @@
+package lib.gintec_rdl.network_state.benchmark;
+
+import lib.gintec_rdl.network_state.core.DispatchTable;
+import lib.gintec_rdl.network_state.core.EventHistory;
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+import lib.gintec_rdl.network_state.core.StatePipeline;
+import lib.gintec_rdl.network_state.core.StateSubscriber;
+
+/**
+ * Benchmark fixture standing in for subscribed specs. Each spec gets a pipeline of its own, and
+ * every delivered state is counted in {@link #delivered}, so benchmarks can return it and keep
+ * the work from being eliminated.
+ */
+final class CountingSpecs {
+    private final ImmediateScheduler scheduler;
+    private final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+
+    long delivered;
+
+    CountingSpecs(ImmediateScheduler scheduler) {
+        this.scheduler = scheduler;
+        final Runnable count = () -> delivered++;
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = count;
+        }
+    }
+
+    /**
+     * @param distinct        Whether consecutive duplicates are dropped
+     * @param historyCapacity History capacity, 0 to disable recording
+     * @return A spec's pipeline, counting its deliveries
+     */
+    StatePipeline pipeline(boolean distinct, int historyCapacity) {
+        return new StatePipeline(new DispatchTable(actions, Runnable::run), scheduler, 0, 0, distinct,
+            historyCapacity > 0 ? new EventHistory(historyCapacity) : null);
+    }
+
+    /**
+     * Subscribes specs with duplicate filtering to the machine
+     *
+     * @param machine            Machine to subscribe to
+     * @param count              Number of specs
+     * @param historyCapacity    History capacity of each spec, 0 to disable recording
+     * @param countNetworkEvents Whether network available and lost events are counted as well
+     * @param <N>                Network handle type
+     */
+    <N> void subscribe(NetworkStateMachine<N> machine, int count, int historyCapacity, boolean countNetworkEvents) {
+        for (int i = 0; i < count; i++) {
+            final StatePipeline pipeline = pipeline(true, historyCapacity);
+            machine.subscribe(new StateSubscriber<N>() {
+                @Override
+                public void onStatus(NetworkStatus status, long networkId) {
+                    pipeline.onEvent(status, 1, networkId);
+                }
+
+                @Override
+                public void onNetworkAvailable(long networkId, N network) {
+                    if (countNetworkEvents) {
+                        delivered++;
+                    }
+                }
+
+                @Override
+                public void onNetworkLosing(long networkId, N network, int maxMsToLive, N replacement) {
+                }
+
+                @Override
+                public void onNetworkLost(long networkId, N network) {
+                    if (countNetworkEvents) {
+                        delivered++;
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package lib.gintec_rdl.network_state.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+
+/**
+ * Cost of one network coming up and going down on a shared registration, fanned out to every
+ * subscribed spec's pipeline
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FanOutBenchmark {
+    private static final Object NETWORK = new Object();
+    private static final long NETWORK_ID = 100;
+
+    @Param({"1", "10", "1000"})
+    public int subscribers;
+
+    private NetworkStateMachine<Object> machine;
+    private CountingSpecs specs;
+
+    @Setup
+    public void setUp() {
+        machine = new NetworkStateMachine<>(false, null);
+        specs = new CountingSpecs(new ImmediateScheduler());
+        specs.subscribe(machine, subscribers, 0, false);
+    }
+
+    /**
+     * @return Deliveries so far, so the work is not eliminated
+     */
+    @Benchmark
+    public long availableThenLost() {
+        machine.onAvailable(NETWORK_ID, NETWORK);
+        machine.onLost(NETWORK_ID);
+        return specs.delivered;
+    }
+}
@@ -0,0 +1,46 @@
+package lib.gintec_rdl.network_state.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+
+/**
+ * Sustained Wi-Fi flapping through a shared registration with ten specs recording history, the
+ * load of the trace replay soak. Throughput is reported in flaps per second; with the gc
+ * profiler, an allocation rate near zero bytes per flap shows memory staying flat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FlappingSoakBenchmark {
+    private static final int SPECS = 10;
+    private static final Long WIFI = 1L;
+
+    private NetworkStateMachine<Long> machine;
+    private CountingSpecs specs;
+
+    @Setup
+    public void setUp() {
+        machine = new NetworkStateMachine<>(false, null);
+        specs = new CountingSpecs(new ImmediateScheduler());
+        specs.subscribe(machine, SPECS, 32, true);
+    }
+
+    /**
+     * @return Deliveries so far, so the work is not eliminated
+     */
+    @Benchmark
+    public long flap() {
+        machine.onAvailable(WIFI, WIFI);
+        machine.onLost(WIFI);
+        return specs.delivered;
+    }
+}
@@ -0,0 +1,27 @@
+package lib.gintec_rdl.network_state.benchmark;
+
+import lib.gintec_rdl.network_state.core.Scheduler;
+
+/**
+ * Scheduler that never fires, with a monotonic clock advanced by the benchmark itself
+ */
+final class ImmediateScheduler implements Scheduler {
+    private long now;
+
+    void advance(long millis) {
+        now += millis;
+    }
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+    }
+}
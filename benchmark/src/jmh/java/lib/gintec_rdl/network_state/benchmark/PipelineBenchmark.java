@@ -0,0 +1,58 @@
+package lib.gintec_rdl.network_state.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+import lib.gintec_rdl.network_state.core.StatePipeline;
+
+/**
+ * Events per second through one spec's pipeline, from raw state to callback. Run with the
+ * {@code gc} profiler to get the per-event allocation, which should stay at 0.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PipelineBenchmark {
+    private static final NetworkStatus[] FLAPPING = {NetworkStatus.AVAILABLE, NetworkStatus.LOSING, NetworkStatus.LOST};
+
+    /**
+     * Whether consecutive duplicates are dropped
+     */
+    @Param({"true", "false"})
+    public boolean distinct;
+
+    /**
+     * History capacity, 0 to disable recording
+     */
+    @Param({"0", "32"})
+    public int historyCapacity;
+
+    private final ImmediateScheduler scheduler = new ImmediateScheduler();
+    private CountingSpecs specs;
+    private StatePipeline pipeline;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        specs = new CountingSpecs(scheduler);
+        pipeline = specs.pipeline(distinct, historyCapacity);
+    }
+
+    @Benchmark
+    public long event() {
+        final NetworkStatus status = FLAPPING[index];
+        index = index == FLAPPING.length - 1 ? 0 : index + 1;
+        scheduler.advance(1);
+        pipeline.onEvent(status, 1, 100);
+        return specs.delivered;
+    }
+}
@@ -0,0 +1,70 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.Arrays;
+
+/**
+ * <p>Bandwidth tiers with hysteresis.</p>
+ * <p>Tiers are delimited by ascending boundaries in kbps: {@code n} boundaries make {@code n + 1}
+ * tiers, tier 0 being below the first boundary. To avoid reporting every small fluctuation, a
+ * bandwidth has to rise {@code hysteresisPercent} above a boundary to move up a tier and fall
+ * the same amount below it to move down.</p>
+ */
+public final class BandwidthTiers {
+    private final int[] boundaries;
+    private final int hysteresisPercent;
+
+    /**
+     * @param hysteresisPercent Hysteresis around each boundary, in percent of the boundary
+     * @param boundariesKbps    Strictly ascending tier boundaries in kbps
+     */
+    public BandwidthTiers(int hysteresisPercent, int... boundariesKbps) {
+        if (hysteresisPercent < 0 || hysteresisPercent >= 100) {
+            throw new IllegalArgumentException("hysteresisPercent must be in [0, 100)");
+        }
+        for (int i = 1; i < boundariesKbps.length; i++) {
+            if (boundariesKbps[i] <= boundariesKbps[i - 1]) {
+                throw new IllegalArgumentException("Boundaries must be strictly ascending: " + Arrays.toString(boundariesKbps));
+            }
+        }
+        this.boundaries = boundariesKbps.clone();
+        this.hysteresisPercent = hysteresisPercent;
+    }
+
+    /**
+     * @return Number of tiers
+     */
+    public int count() {
+        return boundaries.length + 1;
+    }
+
+    /**
+     * @param kbps        Bandwidth
+     * @param currentTier Current tier, negative if none
+     * @return Tier of the bandwidth, staying in the current tier while within the hysteresis band
+     */
+    public int tierOf(int kbps, int currentTier) {
+        if (currentTier < 0) {
+            int tier = 0;
+            while (tier < boundaries.length && kbps >= boundaries[tier]) {
+                tier++;
+            }
+            return tier;
+        }
+        int tier = Math.min(currentTier, boundaries.length);
+        while (tier < boundaries.length && kbps >= upperBound(boundaries[tier])) {
+            tier++;
+        }
+        while (tier > 0 && kbps < lowerBound(boundaries[tier - 1])) {
+            tier--;
+        }
+        return tier;
+    }
+
+    private int upperBound(int boundary) {
+        return (int) (boundary + (long) boundary * hysteresisPercent / 100);
+    }
+
+    private int lowerBound(int boundary) {
+        return (int) (boundary - (long) boundary * hysteresisPercent / 100);
+    }
+}
@@ -0,0 +1,71 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Decides which capability updates are worth reporting, per network.</p>
+ * <p>With {@link BandwidthTiers}, an update is reported when the metered or validated flags
+ * change or when either bandwidth crosses a tier boundary. Without tiers every change is
+ * reported. The first update of a network is always reported.</p>
+ * <p>Thread safe.</p>
+ */
+public final class CapabilitiesFilter {
+    private final BandwidthTiers tiers;
+    private final LiveNetworkSet<LinkCapabilities> last = new LiveNetworkSet<>();
+
+    /**
+     * @param tiers Bandwidth tiers, null to report every change
+     */
+    public CapabilitiesFilter(BandwidthTiers tiers) {
+        this.tiers = tiers;
+    }
+
+    /**
+     * @param networkId      Network id
+     * @param downstreamKbps Downstream bandwidth
+     * @param upstreamKbps   Upstream bandwidth
+     * @param metered        Whether the network is metered
+     * @param validated      Whether the network is validated
+     * @return The capabilities to report, null if the update is not worth reporting
+     */
+    public synchronized LinkCapabilities update(long networkId, int downstreamKbps, int upstreamKbps,
+                                                boolean metered, boolean validated) {
+        final LinkCapabilities previous = last.get(networkId);
+        final int downstreamTier;
+        final int upstreamTier;
+        if (tiers != null) {
+            downstreamTier = tiers.tierOf(downstreamKbps, previous != null ? previous.getDownstreamTier() : -1);
+            upstreamTier = tiers.tierOf(upstreamKbps, previous != null ? previous.getUpstreamTier() : -1);
+        } else {
+            downstreamTier = 0;
+            upstreamTier = 0;
+        }
+        if (previous != null
+            && previous.isMetered() == metered
+            && previous.isValidated() == validated
+            && previous.getDownstreamTier() == downstreamTier
+            && previous.getUpstreamTier() == upstreamTier
+            && (tiers != null || (previous.getDownstreamKbps() == downstreamKbps
+            && previous.getUpstreamKbps() == upstreamKbps))) {
+            return null;
+        }
+        final LinkCapabilities capabilities = new LinkCapabilities(downstreamKbps, upstreamKbps,
+            downstreamTier, upstreamTier, metered, validated);
+        last.add(networkId, capabilities);
+        return capabilities;
+    }
+
+    /**
+     * Forgets what was reported for the network, e.g when it goes down
+     *
+     * @param networkId Network id
+     */
+    public synchronized void forget(long networkId) {
+        last.remove(networkId);
+    }
+
+    /**
+     * Forgets what was reported for every network, so the next update of each is reported
+     */
+    public synchronized void clear() {
+        last.clear();
+    }
+}
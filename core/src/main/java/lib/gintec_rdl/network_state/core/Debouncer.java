@@ -0,0 +1,74 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Coalesces bursts of state transitions into the last (settled) state.</p>
+ * <p>A state is forwarded once no other state has been submitted for the quiet window. To keep a
+ * continuously flapping link from holding states back forever, the pending state is forwarded
+ * at the latest {@code maxLatencyMillis} after the first state of the burst.</p>
+ */
+public final class Debouncer {
+    private final Scheduler scheduler;
+    private final long quietMillis;
+    private final long maxLatencyMillis;
+    private final StatusSink sink;
+    private final Runnable flushTask = this::flush;
+
+    private NetworkStatus pending;
+    private long burstStart;
+
+    /**
+     * @param scheduler        Scheduler to time the windows with
+     * @param quietMillis      Time without new states after which the pending state is forwarded
+     * @param maxLatencyMillis Maximum time a state can be held back
+     * @param sink             Receives the settled states
+     */
+    public Debouncer(Scheduler scheduler, long quietMillis, long maxLatencyMillis, StatusSink sink) {
+        if (quietMillis < 0) {
+            throw new IllegalArgumentException("quietMillis < 0");
+        }
+        if (maxLatencyMillis < quietMillis) {
+            throw new IllegalArgumentException("maxLatencyMillis < quietMillis");
+        }
+        this.scheduler = scheduler;
+        this.quietMillis = quietMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.sink = sink;
+    }
+
+    /**
+     * @param status State to submit
+     */
+    public void submit(NetworkStatus status) {
+        synchronized (this) {
+            final long now = scheduler.now();
+            if (pending == null) {
+                burstStart = now;
+            }
+            pending = status;
+            final long deadline = Math.min(now + quietMillis, burstStart + maxLatencyMillis);
+            scheduler.cancel(flushTask);
+            scheduler.schedule(flushTask, Math.max(0, deadline - now));
+        }
+    }
+
+    /**
+     * Drops the pending state, if any
+     */
+    public void clear() {
+        synchronized (this) {
+            pending = null;
+            scheduler.cancel(flushTask);
+        }
+    }
+
+    private void flush() {
+        final NetworkStatus status;
+        synchronized (this) {
+            status = pending;
+            pending = null;
+        }
+        if (status != null) {
+            sink.accept(status);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Holds network work while offline and runs it once the network is back.</p>
+ * <p>Tasks run in submission order, at most {@code maxConcurrency} at a time, so a reconnect
+ * drains the backlog in bounded batches instead of saturating the fresh link. Tasks with
+ * constraints, e.g {@link #REQUIRE_UNMETERED}, wait until their constraints are met while other
+ * tasks run. At most {@code capacity} tasks are held; further submissions are rejected.</p>
+ * <p>The queue is fed the network conditions with {@link #onConditions}, typically by a
+ * network spec. A task the executor rejects stays at the head of the queue and is retried on
+ * the next submission, condition update or task completion.</p>
+ */
+public final class DeferredTaskQueue {
+    /**
+     * Only run the task on an unmetered network
+     */
+    public static final int REQUIRE_UNMETERED = 1;
+    /**
+     * Only run the task on a network validated to reach the internet
+     */
+    public static final int REQUIRE_VALIDATED = 1 << 1;
+
+    private static final int CONSTRAINT_COMBINATIONS = 4;
+
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final int capacity;
+    /**
+     * Pending tasks per constraint combination, each in submission order
+     */
+    private final ArrayDeque<Entry>[] pending;
+    private final AtomicInteger drainWip = new AtomicInteger();
+
+    private int pendingCount;
+    private int running;
+    private long sequence;
+    private boolean available;
+    private int satisfied;
+
+    /**
+     * @param executor       Executor the tasks are run on
+     * @param maxConcurrency Maximum number of tasks running at once
+     * @param capacity       Maximum number of pending tasks
+     */
+    @SuppressWarnings("unchecked")
+    public DeferredTaskQueue(Executor executor, int maxConcurrency, int capacity) {
+        if (maxConcurrency < 1 || capacity < 1) {
+            throw new IllegalArgumentException("maxConcurrency and capacity must be positive");
+        }
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.capacity = capacity;
+        this.pending = (ArrayDeque<Entry>[]) new ArrayDeque<?>[CONSTRAINT_COMBINATIONS];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Submits a task, which runs right away if the network is available and meets its
+     * constraints and the concurrency limit allows
+     *
+     * @param task        Task to run
+     * @param constraints {@link #REQUIRE_UNMETERED} and/or {@link #REQUIRE_VALIDATED}, 0 for none
+     * @return False if the queue is full and the task was rejected
+     */
+    public boolean submit(Runnable task, int constraints) {
+        if ((constraints & ~(REQUIRE_UNMETERED | REQUIRE_VALIDATED)) != 0) {
+            throw new IllegalArgumentException("Unknown constraints " + constraints);
+        }
+        synchronized (this) {
+            if (pendingCount >= capacity) {
+                return false;
+            }
+            pending[constraints].addLast(new Entry(task, constraints, sequence++));
+            pendingCount++;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Updates the network conditions, draining eligible tasks
+     *
+     * @param available Whether the network is available
+     * @param unmetered Whether it is unmetered
+     * @param validated Whether it is validated
+     */
+    public void onConditions(boolean available, boolean unmetered, boolean validated) {
+        synchronized (this) {
+            this.available = available;
+            this.satisfied = (unmetered ? REQUIRE_UNMETERED : 0) | (validated ? REQUIRE_VALIDATED : 0);
+        }
+        drain();
+    }
+
+    /**
+     * Drops all pending tasks. Running tasks are not affected.
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<Entry> queue : pending) {
+            queue.clear();
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * @return Number of tasks waiting to run
+     */
+    public synchronized int pendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @return Number of tasks running
+     */
+    public synchronized int runningCount() {
+        return running;
+    }
+
+    private void drain() {
+        // Tasks finishing on a direct executor re-enter here; they are picked up by the loop
+        if (drainWip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Entry next;
+            while ((next = claim()) != null) {
+                try {
+                    executor.execute(next);
+                } catch (RejectedExecutionException e) {
+                    unclaim(next);
+                    break;
+                }
+            }
+            missed = drainWip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return Oldest pending task the conditions allow to run now, null if none
+     */
+    private synchronized Entry claim() {
+        if (!available || running >= maxConcurrency) {
+            return null;
+        }
+        ArrayDeque<Entry> oldest = null;
+        for (int constraints = 0; constraints < pending.length; constraints++) {
+            final Entry head = pending[constraints].peekFirst();
+            if (head != null && (constraints & satisfied) == constraints
+                && (oldest == null || head.sequence < oldest.peekFirst().sequence)) {
+                oldest = pending[constraints];
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        pendingCount--;
+        running++;
+        return oldest.pollFirst();
+    }
+
+    /**
+     * Puts a claimed task back at the head of its queue
+     *
+     * @param entry Task that could not be started
+     */
+    private synchronized void unclaim(Entry entry) {
+        running--;
+        pendingCount++;
+        pending[entry.constraints].addFirst(entry);
+    }
+
+    private synchronized void onFinished() {
+        running--;
+    }
+
+    private final class Entry implements Runnable {
+        final Runnable task;
+        final int constraints;
+        final long sequence;
+
+        Entry(Runnable task, int constraints, long sequence) {
+            this.task = task;
+            this.constraints = constraints;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                onFinished();
+                drain();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Dispatch instrumentation: per-state event counts, queue-to-dispatch latency and callback
+ * execution time.</p>
+ * <p>Latencies are recorded in nanoseconds into {@link Histogram}s, so recording is a few atomic
+ * increments. One instance can be shared by many specs. When no metrics are configured, the
+ * dispatch path only pays a null check.</p>
+ */
+public final class DispatchMetrics {
+    /**
+     * Notified when a callback runs longer than the configured budget
+     */
+    public interface SlowCallbackListener {
+        /**
+         * Called on the thread that ran the callback, right after it returned
+         *
+         * @param status         State whose callback was slow
+         * @param durationMillis Time the callback took
+         */
+        void onSlowCallback(NetworkStatus status, long durationMillis);
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(NetworkStatus.COUNT);
+    private final Histogram queueLatency = new Histogram();
+    private final Histogram callbackDuration = new Histogram();
+    private final long slowCallbackNanos;
+    private final SlowCallbackListener slowCallbackListener;
+
+    /**
+     * Metrics without slow callback warnings
+     */
+    public DispatchMetrics() {
+        this(0, null);
+    }
+
+    /**
+     * @param slowCallbackMillis   Callback execution budget in milliseconds
+     * @param slowCallbackListener Notified when a callback exceeds the budget
+     */
+    public DispatchMetrics(long slowCallbackMillis, SlowCallbackListener slowCallbackListener) {
+        this.slowCallbackNanos = TimeUnit.MILLISECONDS.toNanos(slowCallbackMillis);
+        this.slowCallbackListener = slowCallbackListener;
+    }
+
+    void onDispatched(NetworkStatus status) {
+        counts.incrementAndGet(status.ordinal());
+    }
+
+    void onQueueLatency(long nanos) {
+        queueLatency.record(nanos);
+    }
+
+    void onCallbackDuration(NetworkStatus status, long nanos) {
+        callbackDuration.record(nanos);
+        if (slowCallbackListener != null && nanos > slowCallbackNanos) {
+            slowCallbackListener.onSlowCallback(status, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    /**
+     * @param status State
+     * @return Number of times the state was dispatched
+     */
+    public long count(NetworkStatus status) {
+        return counts.get(status.ordinal());
+    }
+
+    /**
+     * @return Time in nanoseconds between a callback being queued and starting to run
+     */
+    public Histogram queueLatency() {
+        return queueLatency;
+    }
+
+    /**
+     * @return Time in nanoseconds callbacks took to run
+     */
+    public Histogram callbackDuration() {
+        return callbackDuration;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DispatchMetrics{counts={");
+        for (int i = 0; i < NetworkStatus.COUNT; i++) {
+            final long count = counts.get(i);
+            if (count > 0) {
+                sb.append(NetworkStatus.valueOf(i)).append('=').append(count).append(", ");
+            }
+        }
+        return sb.append("}, queueLatency(p50/p99 ns)=").append(queueLatency.percentile(50)).append('/')
+            .append(queueLatency.percentile(99)).append(", callbackDuration(p50/p99 ns)=")
+            .append(callbackDuration.percentile(50)).append('/').append(callbackDuration.percentile(99))
+            .append('}').toString();
+    }
+}
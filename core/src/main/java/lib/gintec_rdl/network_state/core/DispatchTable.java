@@ -0,0 +1,106 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.concurrent.Executor;
+
+/**
+ * <p>Per-state table of pre-built dispatch actions, indexed by {@link NetworkStatus#ordinal()}.</p>
+ * <p>The table is built once when a spec is created. Dispatching a state is an array load and a
+ * single {@link Executor#execute(Runnable)} of a reused runnable, so delivering an event does not
+ * allocate.</p>
+ */
+public final class DispatchTable {
+    private final Runnable[] actions;
+    private final TimedAction[] timedActions;
+    private final Executor executor;
+    private final DispatchMetrics metrics;
+
+    /**
+     * @param actions  Actions indexed by state ordinal. Null entries are skipped. The array is
+     *                 copied.
+     * @param executor Executor the actions are run on
+     */
+    public DispatchTable(Runnable[] actions, Executor executor) {
+        this(actions, executor, null);
+    }
+
+    /**
+     * @param actions  Actions indexed by state ordinal. Null entries are skipped. The array is
+     *                 copied.
+     * @param executor Executor the actions are run on
+     * @param metrics  Metrics to record dispatches into, null to disable instrumentation
+     */
+    public DispatchTable(Runnable[] actions, Executor executor, DispatchMetrics metrics) {
+        if (actions.length != NetworkStatus.COUNT) {
+            throw new IllegalArgumentException("Expected " + NetworkStatus.COUNT + " actions, got " + actions.length);
+        }
+        this.actions = actions.clone();
+        this.executor = executor;
+        this.metrics = metrics;
+        if (metrics != null) {
+            timedActions = new TimedAction[NetworkStatus.COUNT];
+            for (int i = 0; i < actions.length; i++) {
+                if (actions[i] != null) {
+                    timedActions[i] = new TimedAction(NetworkStatus.valueOf(i), actions[i], metrics);
+                }
+            }
+        } else {
+            timedActions = null;
+        }
+    }
+
+    /**
+     * @param status State to dispatch
+     * @return True if an action was scheduled, false if there's no action for the state
+     */
+    public boolean dispatch(NetworkStatus status) {
+        final Runnable action = actions[status.ordinal()];
+        if (action == null) {
+            return false;
+        }
+        if (metrics != null) {
+            final TimedAction timedAction = timedActions[status.ordinal()];
+            metrics.onDispatched(status);
+            timedAction.queuedAt = System.nanoTime();
+            executor.execute(timedAction);
+        } else {
+            executor.execute(action);
+        }
+        return true;
+    }
+
+    /**
+     * @param status State to check
+     * @return Whether an action is registered for the state
+     */
+    public boolean handles(NetworkStatus status) {
+        return actions[status.ordinal()] != null;
+    }
+
+    /**
+     * Action wrapper measuring queue latency and execution time. When the same state is queued
+     * again before running, the latency is measured from the latest queueing.
+     */
+    private static final class TimedAction implements Runnable {
+        private final NetworkStatus status;
+        private final Runnable action;
+        private final DispatchMetrics metrics;
+        volatile long queuedAt;
+
+        TimedAction(NetworkStatus status, Runnable action, DispatchMetrics metrics) {
+            this.status = status;
+            this.action = action;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void run() {
+            final long start = System.nanoTime();
+            metrics.onQueueLatency(start - queuedAt);
+            try {
+                action.run();
+            } finally {
+                metrics.onCallbackDuration(status, System.nanoTime() - start);
+            }
+        }
+    }
+}
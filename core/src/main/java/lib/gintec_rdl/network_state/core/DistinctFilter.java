@@ -0,0 +1,39 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Forwards a state only if it differs from the previously forwarded one
+ */
+public final class DistinctFilter implements StatusSink {
+    private final StatusSink sink;
+    private final AtomicReference<NetworkStatus> last = new AtomicReference<>();
+
+    /**
+     * @param sink Receives the states that are not consecutive duplicates
+     */
+    public DistinctFilter(StatusSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(NetworkStatus status) {
+        if (last.getAndSet(status) != status) {
+            sink.accept(status);
+        }
+    }
+
+    /**
+     * @return The last forwarded state, null if none
+     */
+    public NetworkStatus last() {
+        return last.get();
+    }
+
+    /**
+     * Forgets the last forwarded state, so the next state is forwarded whatever it is
+     */
+    public void reset() {
+        last.set(null);
+    }
+}
@@ -0,0 +1,157 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Fixed capacity ring buffer of the most recent state transitions, for diagnostics.</p>
+ * <p>Entries are stored as primitives in a preallocated array, so recording never allocates.
+ * Writers claim slots with an atomic counter and readers validate each slot with its sequence
+ * number, so readers never block writers. Entries overwritten while being read are skipped.</p>
+ */
+public final class EventHistory {
+    /**
+     * Transition as received from the system
+     */
+    public static final int KIND_RAW = 0;
+    /**
+     * Transition delivered to the spec's callbacks
+     */
+    public static final int KIND_DELIVERED = 1;
+
+    /**
+     * Value recorded for an unknown transport
+     */
+    public static final int TRANSPORT_UNKNOWN = 0xFF;
+
+    // Slot layout: sequence + 1 (negated while being written), timestamp, network id, packed fields
+    private static final int STRIDE = 4;
+
+    private final AtomicLongArray slots;
+    private final AtomicLong cursor = new AtomicLong();
+    private final int mask;
+
+    /**
+     * @param capacity Number of entries kept, rounded up to a power of two
+     */
+    public EventHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = Math.max(size, 1) - 1;
+        this.slots = new AtomicLongArray((mask + 1) * STRIDE);
+    }
+
+    /**
+     * @return Number of entries kept
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Records a transition
+     *
+     * @param kind      {@link #KIND_RAW} or {@link #KIND_DELIVERED}
+     * @param timestamp Time of the transition in milliseconds
+     * @param status    State
+     * @param transport Transport ordinal between 0 and 254, or {@link #TRANSPORT_UNKNOWN}
+     * @param networkId Network id, 0 if none
+     */
+    public void record(int kind, long timestamp, NetworkStatus status, int transport, long networkId) {
+        final long sequence = cursor.getAndIncrement();
+        final int base = (int) (sequence & mask) * STRIDE;
+        while (true) {
+            final long current = slots.get(base);
+            if (Math.abs(current) > sequence + 1) {
+                // A newer transition already took the slot
+                return;
+            }
+            if (current >= 0 && slots.compareAndSet(base, current, -(sequence + 1))) {
+                break;
+            }
+            // An older transition is still being written to the slot, only possible if the ring
+            // wrapped around during that write
+            Thread.yield();
+        }
+        slots.set(base + 1, timestamp);
+        slots.set(base + 2, networkId);
+        slots.set(base + 3, ((long) (kind & 0xFF) << 16) | ((transport & 0xFF) << 8) | (status.ordinal() & 0xFF));
+        slots.set(base, sequence + 1);
+    }
+
+    /**
+     * @return Number of transitions recorded since creation, including overwritten ones
+     */
+    public long recorded() {
+        return cursor.get();
+    }
+
+    /**
+     * @return Consistent copy of the retained entries, oldest first
+     */
+    public Entry[] snapshot() {
+        final long end = cursor.get();
+        final long start = Math.max(0, end - capacity());
+        final Entry[] buffer = new Entry[(int) (end - start)];
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            final int base = (int) (sequence & mask) * STRIDE;
+            final long before = slots.get(base);
+            final long timestamp = slots.get(base + 1);
+            final long networkId = slots.get(base + 2);
+            final long packed = slots.get(base + 3);
+            final long after = slots.get(base);
+            if (before == sequence + 1 && after == before) {
+                buffer[count++] = new Entry(sequence, (int) (packed >>> 16) & 0xFF, timestamp,
+                    NetworkStatus.valueOf((int) packed & 0xFF), (int) (packed >>> 8) & 0xFF, networkId);
+            }
+        }
+        if (count == buffer.length) {
+            return buffer;
+        }
+        final Entry[] entries = new Entry[count];
+        System.arraycopy(buffer, 0, entries, 0, count);
+        return entries;
+    }
+
+    /**
+     * Appends a human readable dump of the retained entries, e.g for bug reports
+     *
+     * @param out Destination
+     */
+    public void dump(StringBuilder out) {
+        for (Entry entry : snapshot()) {
+            out.append(entry).append('\n');
+        }
+    }
+
+    /**
+     * One recorded transition
+     */
+    public static final class Entry {
+        public final long sequence;
+        public final int kind;
+        public final long timestamp;
+        public final NetworkStatus status;
+        public final int transport;
+        public final long networkId;
+
+        Entry(long sequence, int kind, long timestamp, NetworkStatus status, int transport, long networkId) {
+            this.sequence = sequence;
+            this.kind = kind;
+            this.timestamp = timestamp;
+            this.status = status;
+            this.transport = transport;
+            this.networkId = networkId;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + sequence + ' ' + timestamp + ' ' + (kind == KIND_RAW ? "raw" : "delivered") + ' ' + status
+                + " transport=" + (transport == TRANSPORT_UNKNOWN ? "?" : String.valueOf(transport))
+                + " network=" + networkId;
+        }
+    }
+}
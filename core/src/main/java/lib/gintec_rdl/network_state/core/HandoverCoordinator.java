@@ -0,0 +1,129 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Moves long-lived work off a network that is about to be lost, before it goes down.</p>
+ * <p>When a network is losing, the platform grants it a time to live. The coordinator runs the
+ * migration as soon as a replacement network is known, either reported with the losing event
+ * or coming up afterwards, and hands it the time left minus a safety margin. If no replacement
+ * shows up while enough time is left, or the losing network goes down first, the handover is
+ * dropped and the loss is handled like any other.</p>
+ *
+ * @param <N> Platform network handle type
+ */
+public final class HandoverCoordinator<N> {
+    /**
+     * Migrates work from the losing network to its replacement
+     *
+     * @param <N> Platform network handle type
+     */
+    public interface Migration<N> {
+        /**
+         * @param losing       Network about to be lost
+         * @param replacement  Network to move to
+         * @param budgetMillis Time the migration should complete within
+         */
+        void migrate(N losing, N replacement, long budgetMillis);
+    }
+
+    private final Scheduler scheduler;
+    private final long marginMillis;
+    private final Migration<N> migration;
+    /**
+     * Drops the pending handover once there is no time left to complete it
+     */
+    private final Runnable expiry = this::expire;
+
+    private long losingId;
+    private N losing;
+    private long deadline;
+
+    /**
+     * @param scheduler    Scheduler for the deadline
+     * @param marginMillis Time kept in reserve before the losing network's deadline
+     * @param migration    Migration to run
+     */
+    public HandoverCoordinator(Scheduler scheduler, long marginMillis, Migration<N> migration) {
+        if (marginMillis < 0) {
+            throw new IllegalArgumentException("marginMillis < 0");
+        }
+        this.scheduler = scheduler;
+        this.marginMillis = marginMillis;
+        this.migration = migration;
+    }
+
+    /**
+     * @param networkId   Id of the losing network
+     * @param network     Losing network
+     * @param maxMsToLive Time the network is expected to stay up
+     * @param replacement Replacement network if already known, null otherwise
+     */
+    public void onLosing(long networkId, N network, int maxMsToLive, N replacement) {
+        final long budget;
+        synchronized (this) {
+            scheduler.cancel(expiry);
+            losing = null;
+            deadline = scheduler.now() + maxMsToLive;
+            budget = maxMsToLive - marginMillis;
+            if (budget <= 0) {
+                return;
+            }
+            if (replacement == null) {
+                losingId = networkId;
+                losing = network;
+                scheduler.schedule(expiry, budget);
+                return;
+            }
+        }
+        migration.migrate(network, replacement, budget);
+    }
+
+    /**
+     * @param networkId Id of the network that came up
+     * @param network   Network that came up
+     */
+    public void onAvailable(long networkId, N network) {
+        final N from;
+        final long budget;
+        synchronized (this) {
+            if (losing == null || networkId == losingId) {
+                return;
+            }
+            budget = deadline - scheduler.now() - marginMillis;
+            from = losing;
+            losing = null;
+            scheduler.cancel(expiry);
+            if (budget <= 0) {
+                return;
+            }
+        }
+        migration.migrate(from, network, budget);
+    }
+
+    /**
+     * @param networkId Id of the network that went down
+     */
+    public synchronized void onLost(long networkId) {
+        if (losing != null && networkId == losingId) {
+            clear();
+        }
+    }
+
+    /**
+     * Drops the pending handover, if any
+     */
+    public synchronized void clear() {
+        losing = null;
+        scheduler.cancel(expiry);
+    }
+
+    /**
+     * @return Whether a handover is waiting for a replacement network
+     */
+    public synchronized boolean isPending() {
+        return losing != null;
+    }
+
+    private synchronized void expire() {
+        losing = null;
+    }
+}
@@ -0,0 +1,87 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Lock-free histogram of non-negative values with power of two buckets.</p>
+ * <p>Bucket {@code i} counts values in {@code [2^(i-1), 2^i)}, bucket 0 counts zeros. Recording
+ * is a couple of atomic increments and never allocates.</p>
+ */
+public final class Histogram {
+    public static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray totals = new AtomicLongArray(2);
+
+    /**
+     * @param value Value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(v));
+        totals.incrementAndGet(0);
+        totals.addAndGet(1, v);
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long count() {
+        return totals.get(0);
+    }
+
+    /**
+     * @return Mean of the recorded values, 0 if none
+     */
+    public long mean() {
+        final long count = totals.get(0);
+        return count == 0 ? 0 : totals.get(1) / count;
+    }
+
+    /**
+     * @param bucket Bucket index
+     * @return Number of values recorded in the bucket
+     */
+    public long bucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @param bucket Bucket index
+     * @return Exclusive upper bound of the bucket
+     */
+    public static long bucketUpperBound(int bucket) {
+        return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket containing the percentile, 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        final long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        final long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return bucketUpperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Clears every bucket
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        totals.set(0, 0);
+        totals.set(1, 0);
+    }
+}
@@ -0,0 +1,73 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * Immutable capabilities of a network, as reported to capability change callbacks
+ */
+public final class LinkCapabilities {
+    private final int downstreamKbps;
+    private final int upstreamKbps;
+    private final int downstreamTier;
+    private final int upstreamTier;
+    private final boolean metered;
+    private final boolean validated;
+
+    public LinkCapabilities(int downstreamKbps, int upstreamKbps, int downstreamTier, int upstreamTier,
+                            boolean metered, boolean validated) {
+        this.downstreamKbps = downstreamKbps;
+        this.upstreamKbps = upstreamKbps;
+        this.downstreamTier = downstreamTier;
+        this.upstreamTier = upstreamTier;
+        this.metered = metered;
+        this.validated = validated;
+    }
+
+    /**
+     * @return Estimated downstream bandwidth in kbps
+     */
+    public int getDownstreamKbps() {
+        return downstreamKbps;
+    }
+
+    /**
+     * @return Estimated upstream bandwidth in kbps
+     */
+    public int getUpstreamKbps() {
+        return upstreamKbps;
+    }
+
+    /**
+     * @return Downstream {@link BandwidthTiers} tier, 0 if no tiers are configured
+     */
+    public int getDownstreamTier() {
+        return downstreamTier;
+    }
+
+    /**
+     * @return Upstream {@link BandwidthTiers} tier, 0 if no tiers are configured
+     */
+    public int getUpstreamTier() {
+        return upstreamTier;
+    }
+
+    /**
+     * @return Whether the network is metered
+     */
+    public boolean isMetered() {
+        return metered;
+    }
+
+    /**
+     * @return Whether the system validated internet access on the network. True if the platform
+     * cannot tell, i.e before Marshmallow.
+     */
+    public boolean isValidated() {
+        return validated;
+    }
+
+    @Override
+    public String toString() {
+        return "LinkCapabilities{down=" + downstreamKbps + "kbps (tier " + downstreamTier + "), up="
+            + upstreamKbps + "kbps (tier " + upstreamTier + "), metered=" + metered
+            + ", validated=" + validated + '}';
+    }
+}
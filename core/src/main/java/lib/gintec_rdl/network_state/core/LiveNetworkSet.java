@@ -0,0 +1,126 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Compact set of live networks keyed by network id, with the platform's network handle
+ * attached to each entry.</p>
+ * <p>Devices rarely have more than a handful of networks up, so entries are kept in small
+ * parallel arrays searched linearly. Adding and removing only allocates when the arrays grow.</p>
+ * <p>Not thread safe.</p>
+ *
+ * @param <N> Network handle type
+ */
+public final class LiveNetworkSet<N> {
+    private long[] ids = new long[4];
+    private Object[] handles = new Object[4];
+    private int size;
+
+    /**
+     * @param id     Network id
+     * @param handle Network handle
+     * @return True if the network was added, false if it was already live (its handle is updated)
+     */
+    public boolean add(long id, N handle) {
+        final int index = indexOf(id);
+        if (index >= 0) {
+            handles[index] = handle;
+            return false;
+        }
+        if (size == ids.length) {
+            final long[] newIds = new long[size * 2];
+            final Object[] newHandles = new Object[size * 2];
+            System.arraycopy(ids, 0, newIds, 0, size);
+            System.arraycopy(handles, 0, newHandles, 0, size);
+            ids = newIds;
+            handles = newHandles;
+        }
+        ids[size] = id;
+        handles[size] = handle;
+        size++;
+        return true;
+    }
+
+    /**
+     * @param id Network id
+     * @return Handle of the removed network, null if it was not live
+     */
+    @SuppressWarnings("unchecked")
+    public N remove(long id) {
+        final int index = indexOf(id);
+        if (index < 0) {
+            return null;
+        }
+        final N handle = (N) handles[index];
+        size--;
+        ids[index] = ids[size];
+        handles[index] = handles[size];
+        handles[size] = null;
+        return handle;
+    }
+
+    /**
+     * @param id Network id
+     * @return Whether the network is live
+     */
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    /**
+     * @param id Network id
+     * @return Handle of the network, null if not live
+     */
+    @SuppressWarnings("unchecked")
+    public N get(long id) {
+        final int index = indexOf(id);
+        return index >= 0 ? (N) handles[index] : null;
+    }
+
+    /**
+     * @param index Index between 0 and {@link #size()}
+     * @return Handle at the index
+     */
+    @SuppressWarnings("unchecked")
+    public N handleAt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return (N) handles[index];
+    }
+
+    /**
+     * @param index Index between 0 and {@link #size()}
+     * @return Network id at the index
+     */
+    public long idAt(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return ids[index];
+    }
+
+    /**
+     * @return Number of live networks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every network
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            handles[i] = null;
+        }
+        size = 0;
+    }
+
+    private int indexOf(long id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
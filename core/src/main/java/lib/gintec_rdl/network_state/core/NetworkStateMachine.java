@@ -0,0 +1,277 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Platform independent state machine for one system registration, shared by all of its
+ * subscribers.</p>
+ * <p>Per-network events ({@link #onAvailable}, {@link #onLosing(long, Object, int)},
+ * {@link #onLost}) are folded into one aggregate state. The state is available when the first
+ * network comes up and lost when the last one goes down. It is losing only while the last live
+ * network is, and available again once a replacement comes up. The state applies to one current
+ * network, which only changes when it goes down or is replaced after losing. Every individual
+ * network is reported to subscribers as well. Platforms that only report an aggregate state,
+ * like legacy broadcasts, feed it through {@link #onState}.</p>
+ * <p>Late subscribers get the current state and live networks replayed. Events and subscription
+ * changes are serialized, so a subscriber never misses or doubles an event.</p>
+ *
+ * @param <N> Platform network handle type
+ */
+public final class NetworkStateMachine<N> {
+    /**
+     * Notified of aggregate transitions before any subscriber hears of the change, e.g to
+     * maintain a snapshot
+     *
+     * @param <N> Platform network handle type
+     */
+    public interface TransitionListener<N> {
+        /**
+         * @param status  New aggregate state
+         * @param network Network the state now applies to, null if none
+         */
+        void onTransition(NetworkStatus status, N network);
+    }
+
+    private final LiveNetworkSet<N> liveNetworks = new LiveNetworkSet<>();
+    private final boolean singleNetwork;
+    private final TransitionListener<N> transitionListener;
+
+    private volatile StateSubscriber<N>[] subscribers = newArray(0);
+    private volatile NetworkStatus status;
+    /**
+     * Network the state applies to, null if none
+     */
+    private N statusNetwork;
+    private long statusNetworkId;
+
+    /**
+     * @param singleNetwork      Whether only one network can be live at a time, e.g when
+     *                           tracking the default network. A newly available network then
+     *                           replaces the previous one.
+     * @param transitionListener Notified of aggregate transitions, may be null
+     */
+    public NetworkStateMachine(boolean singleNetwork, TransitionListener<N> transitionListener) {
+        this.singleNetwork = singleNetwork;
+        this.transitionListener = transitionListener;
+    }
+
+    /**
+     * @param networkId Network id
+     * @param network   Network handle
+     */
+    public synchronized void onAvailable(long networkId, N network) {
+        N replaced = null;
+        long replacedId = 0;
+        if (singleNetwork && liveNetworks.size() > 0 && !network.equals(liveNetworks.handleAt(0))) {
+            replaced = liveNetworks.handleAt(0);
+            replacedId = liveNetworks.idAt(0);
+            liveNetworks.remove(replacedId);
+        }
+        if (!liveNetworks.add(networkId, network)) {
+            return;
+        }
+        // A replacement coming up while the last network was losing restores the state
+        final boolean publish = liveNetworks.size() == 1 || status == NetworkStatus.LOSING;
+        if (publish) {
+            statusNetwork = network;
+            statusNetworkId = networkId;
+        }
+        if (transitionListener != null) {
+            transitionListener.onTransition(NetworkStatus.AVAILABLE, statusNetwork);
+        }
+        for (StateSubscriber<N> subscriber : subscribers) {
+            if (replaced != null) {
+                subscriber.onNetworkLost(replacedId, replaced);
+            }
+            subscriber.onNetworkAvailable(networkId, network);
+        }
+        if (publish) {
+            publish(NetworkStatus.AVAILABLE, networkId);
+        }
+    }
+
+    /**
+     * @param networkId Network id
+     * @param network   Network handle
+     */
+    public void onLosing(long networkId, N network) {
+        onLosing(networkId, network, 0);
+    }
+
+    /**
+     * @param networkId   Network id
+     * @param network     Network handle
+     * @param maxMsToLive Time the network is expected to stay up, 0 if unknown
+     */
+    public synchronized void onLosing(long networkId, N network, int maxMsToLive) {
+        if (liveNetworks.contains(networkId)) {
+            N replacement = null;
+            for (int i = 0; i < liveNetworks.size(); i++) {
+                if (liveNetworks.idAt(i) != networkId) {
+                    replacement = liveNetworks.handleAt(i);
+                    break;
+                }
+            }
+            for (StateSubscriber<N> subscriber : subscribers) {
+                subscriber.onNetworkLosing(networkId, network, maxMsToLive, replacement);
+            }
+        }
+        // Still connected through other networks otherwise
+        if (liveNetworks.size() <= 1) {
+            transition(NetworkStatus.LOSING, networkId, network);
+        }
+    }
+
+    /**
+     * @param networkId Network id
+     */
+    public synchronized void onLost(long networkId) {
+        final N network = liveNetworks.remove(networkId);
+        if (network == null) {
+            return;
+        }
+        final boolean last = liveNetworks.size() == 0;
+        if (last) {
+            statusNetwork = null;
+            statusNetworkId = 0;
+        } else if (networkId == statusNetworkId) {
+            statusNetwork = liveNetworks.handleAt(0);
+            statusNetworkId = liveNetworks.idAt(0);
+        }
+        if (transitionListener != null) {
+            transitionListener.onTransition(last ? NetworkStatus.LOST : NetworkStatus.AVAILABLE,
+                statusNetwork);
+        }
+        for (StateSubscriber<N> subscriber : subscribers) {
+            subscriber.onNetworkLost(networkId, network);
+        }
+        if (last) {
+            publish(NetworkStatus.LOST, networkId);
+        } else if (status == NetworkStatus.LOSING) {
+            publish(NetworkStatus.AVAILABLE, statusNetworkId);
+        }
+    }
+
+    /**
+     * Called when no matching network could be found
+     */
+    public synchronized void onUnavailable() {
+        transition(NetworkStatus.NOT_AVAILABLE, 0, null);
+    }
+
+    /**
+     * Called when the platform did not report an initial state in time. Platforms report
+     * matching networks right after registering, so if there is no state by then, no network
+     * matches and the state becomes {@link NetworkStatus#NOT_AVAILABLE}.
+     *
+     * @return Whether the state was set
+     */
+    public synchronized boolean onInitialDeadline() {
+        if (status != null || liveNetworks.size() > 0) {
+            return false;
+        }
+        transition(NetworkStatus.NOT_AVAILABLE, 0, null);
+        return true;
+    }
+
+    /**
+     * Sets the aggregate state directly, for platforms that do not report individual networks
+     *
+     * @param status    New state
+     * @param networkId Id of the network the state applies to, 0 if unknown
+     */
+    public synchronized void onState(NetworkStatus status, long networkId) {
+        transition(status, networkId, null);
+    }
+
+    private void transition(NetworkStatus status, long networkId, N network) {
+        if (transitionListener != null) {
+            transitionListener.onTransition(status, network);
+        }
+        publish(status, networkId);
+    }
+
+    private void publish(NetworkStatus status, long networkId) {
+        this.status = status;
+        for (StateSubscriber<N> subscriber : subscribers) {
+            subscriber.onStatus(status, networkId);
+        }
+    }
+
+    /**
+     * Adds a subscriber, replaying the current state and live networks to it
+     *
+     * @param subscriber Subscriber to add
+     * @return False if already subscribed
+     */
+    public synchronized boolean subscribe(StateSubscriber<N> subscriber) {
+        final StateSubscriber<N>[] current = subscribers;
+        for (StateSubscriber<N> existing : current) {
+            if (existing == subscriber) {
+                return false;
+            }
+        }
+        final StateSubscriber<N>[] updated = newArray(current.length + 1);
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = subscriber;
+        subscribers = updated;
+
+        if (status != null) {
+            subscriber.onStatus(status, statusNetworkId);
+        }
+        for (int i = 0; i < liveNetworks.size(); i++) {
+            subscriber.onNetworkAvailable(liveNetworks.idAt(i), liveNetworks.handleAt(i));
+        }
+        return true;
+    }
+
+    /**
+     * @param subscriber Subscriber to remove
+     * @return Number of remaining subscribers
+     */
+    public synchronized int unsubscribe(StateSubscriber<N> subscriber) {
+        final StateSubscriber<N>[] current = subscribers;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return current.length;
+        }
+        final StateSubscriber<N>[] updated = newArray(current.length - 1);
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        subscribers = updated;
+        return updated.length;
+    }
+
+    /**
+     * Forgets the state and live networks, e.g after the system registration was removed
+     */
+    public synchronized void reset() {
+        status = null;
+        statusNetwork = null;
+        statusNetworkId = 0;
+        liveNetworks.clear();
+    }
+
+    /**
+     * @return Current aggregate state, null if none was received
+     */
+    public NetworkStatus status() {
+        return status;
+    }
+
+    /**
+     * @return Number of live networks
+     */
+    public synchronized int liveNetworkCount() {
+        return liveNetworks.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <N> StateSubscriber<N>[] newArray(int length) {
+        return (StateSubscriber<N>[]) new StateSubscriber<?>[length];
+    }
+}
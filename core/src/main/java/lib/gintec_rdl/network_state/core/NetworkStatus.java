@@ -0,0 +1,42 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Network states a spec can be notified of.</p>
+ * <p>Each state corresponds to one callback on {@code NetworkSpec.Builder}. The ordinal of a state is
+ * used as its index in dispatch tables, so it must stay stable and dense.</p>
+ */
+public enum NetworkStatus {
+    IDLE,
+    FAILED,
+    BLOCKED,
+    SCANNING,
+    SUSPENDED,
+    CONNECTING,
+    AUTHENTICATING,
+    VERIFYING_POOR_LINK,
+    CHECKING_CAPTIVE_PORTAL,
+    OBTAINING_IP_ADDRESS,
+    LOSING,
+    LOST,
+    NOT_AVAILABLE,
+    AVAILABLE,
+    SUPPORTED,
+    NOT_SUPPORTED;
+
+    /**
+     * Number of states, i.e the size of a per-state table
+     */
+    public static final int COUNT = values().length;
+
+    private static final NetworkStatus[] VALUES = values();
+
+    /**
+     * Non allocating alternative to {@code values()[ordinal]}
+     *
+     * @param ordinal State ordinal
+     * @return The state with the given ordinal
+     */
+    public static NetworkStatus valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
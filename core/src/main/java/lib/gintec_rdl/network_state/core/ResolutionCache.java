@@ -0,0 +1,105 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Host name resolutions cached per network, each valid for a fixed time.</p>
+ * <p>A network must be tracked before results for it are stored. Invalidating a network drops
+ * its results and stops tracking it, so a lookup completing after the network went away does
+ * not leave stale entries behind. Each network keeps at most {@code maxEntries} hosts, evicting
+ * the least recently used.</p>
+ */
+public final class ResolutionCache {
+    private final Scheduler clock;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LiveNetworkSet<Map<String, CachedAddresses>> networks = new LiveNetworkSet<>();
+
+    /**
+     * @param clock      Clock for expiry, only {@link Scheduler#now()} is used
+     * @param ttlMillis  Time a resolution stays valid
+     * @param maxEntries Maximum number of hosts per network
+     */
+    public ResolutionCache(Scheduler clock, long ttlMillis, int maxEntries) {
+        if (ttlMillis <= 0 || maxEntries < 1) {
+            throw new IllegalArgumentException("ttlMillis and maxEntries must be positive");
+        }
+        this.clock = clock;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Starts accepting results for the network
+     *
+     * @param networkId Network id
+     */
+    public synchronized void track(long networkId) {
+        if (!networks.contains(networkId)) {
+            networks.add(networkId, new LinkedHashMap<String, CachedAddresses>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedAddresses> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the results of the network and stops tracking it
+     *
+     * @param networkId Network id
+     */
+    public synchronized void invalidate(long networkId) {
+        networks.remove(networkId);
+    }
+
+    /**
+     * @param networkId Network id
+     * @param host      Host name
+     * @param addresses Resolved addresses. Ignored if the network is not tracked.
+     */
+    public synchronized void put(long networkId, String host, InetAddress[] addresses) {
+        final Map<String, CachedAddresses> entries = networks.get(networkId);
+        if (entries != null) {
+            entries.put(host, new CachedAddresses(addresses, clock.now() + ttlMillis));
+        }
+    }
+
+    /**
+     * @param networkId Network id
+     * @param host      Host name
+     * @return Cached addresses, null if none or expired
+     */
+    public synchronized InetAddress[] get(long networkId, String host) {
+        final Map<String, CachedAddresses> entries = networks.get(networkId);
+        final CachedAddresses entry = entries != null ? entries.get(host) : null;
+        if (entry == null) {
+            return null;
+        }
+        if (clock.now() >= entry.expiresAt) {
+            entries.remove(host);
+            return null;
+        }
+        return entry.addresses.clone();
+    }
+
+    /**
+     * Drops all results and tracked networks
+     */
+    public synchronized void clear() {
+        networks.clear();
+    }
+
+    private static final class CachedAddresses {
+        final InetAddress[] addresses;
+        final long expiresAt;
+
+        CachedAddresses(InetAddress[] addresses, long expiresAt) {
+            this.addresses = addresses;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
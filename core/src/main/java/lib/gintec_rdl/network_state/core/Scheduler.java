@@ -0,0 +1,28 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * Minimal timer abstraction used by the event pipeline, so the pipeline does not depend on a
+ * particular platform's timer facility
+ */
+public interface Scheduler {
+    /**
+     * @return Current monotonic time in milliseconds
+     */
+    long now();
+
+    /**
+     * Runs the task after the given delay. Implementations must not allocate per call for an
+     * already known task.
+     *
+     * @param task        Task to run
+     * @param delayMillis Delay in milliseconds
+     */
+    void schedule(Runnable task, long delayMillis);
+
+    /**
+     * Cancels pending runs of the task
+     *
+     * @param task Task to cancel
+     */
+    void cancel(Runnable task);
+}
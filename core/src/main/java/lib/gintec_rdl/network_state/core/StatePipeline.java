@@ -0,0 +1,112 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * <p>Per-subscriber event pipeline:
+ * {@code [debouncer ->] [distinct filter ->] history -> dispatch table}.</p>
+ * <p>Raw events are recorded in the history as they arrive, delivered states once they made it
+ * through the filters. Delivered states can additionally be observed, e.g by a
+ * {@link StatePublisher}. None of the stages allocate per event.</p>
+ */
+public final class StatePipeline {
+    private final DispatchTable dispatchTable;
+    private final Scheduler scheduler;
+    private final EventHistory history;
+    private final Debouncer debouncer;
+    private final StatusSink entry;
+    private final StatusSink observer;
+
+    private volatile int lastTransport = EventHistory.TRANSPORT_UNKNOWN;
+    private volatile long lastNetworkId;
+
+    /**
+     * @param dispatchTable    Table the states are finally dispatched through
+     * @param scheduler        Scheduler for debouncing and history timestamps
+     * @param debounceMillis   Debounce quiet window, 0 to disable debouncing
+     * @param maxLatencyMillis Debounce max latency, ignored if debouncing is disabled
+     * @param distinct         Whether to drop consecutive duplicate states
+     * @param history          History to record into, may be null
+     */
+    public StatePipeline(DispatchTable dispatchTable, Scheduler scheduler, long debounceMillis,
+                         long maxLatencyMillis, boolean distinct, EventHistory history) {
+        this(dispatchTable, scheduler, debounceMillis, maxLatencyMillis, distinct, history, null);
+    }
+
+    /**
+     * @param dispatchTable    Table the states are finally dispatched through
+     * @param scheduler        Scheduler for debouncing and history timestamps
+     * @param debounceMillis   Debounce quiet window, 0 to disable debouncing
+     * @param maxLatencyMillis Debounce max latency, ignored if debouncing is disabled
+     * @param distinct         Whether to drop consecutive duplicate states
+     * @param history          History to record into, may be null
+     * @param observer         Receives every delivered state on the delivering thread, may be null
+     */
+    public StatePipeline(DispatchTable dispatchTable, Scheduler scheduler, long debounceMillis,
+                         long maxLatencyMillis, boolean distinct, EventHistory history, StatusSink observer) {
+        this.dispatchTable = dispatchTable;
+        this.observer = observer;
+        this.scheduler = scheduler;
+        this.history = history;
+
+        StatusSink sink = this::deliver;
+        if (distinct) {
+            sink = new DistinctFilter(sink);
+        }
+        if (debounceMillis > 0) {
+            debouncer = new Debouncer(scheduler, debounceMillis, maxLatencyMillis, sink);
+            sink = debouncer::submit;
+        } else {
+            debouncer = null;
+        }
+        this.entry = sink;
+    }
+
+    /**
+     * Feeds a state received from the platform through the pipeline
+     *
+     * @param status    State
+     * @param transport Transport ordinal for the history, {@link EventHistory#TRANSPORT_UNKNOWN}
+     *                  if unknown
+     * @param networkId Network id for the history, 0 if none
+     */
+    public void onEvent(NetworkStatus status, int transport, long networkId) {
+        lastTransport = transport;
+        lastNetworkId = networkId;
+        record(EventHistory.KIND_RAW, status, transport, networkId);
+        entry.accept(status);
+    }
+
+    /**
+     * Dispatches a state right away, bypassing debouncing and duplicate filtering
+     *
+     * @param status State
+     */
+    public void deliver(NetworkStatus status) {
+        record(EventHistory.KIND_DELIVERED, status, lastTransport, lastNetworkId);
+        dispatchTable.dispatch(status);
+        if (observer != null) {
+            observer.accept(status);
+        }
+    }
+
+    /**
+     * Drops a state held back by the debouncer, if any
+     */
+    public void clear() {
+        if (debouncer != null) {
+            debouncer.clear();
+        }
+    }
+
+    /**
+     * @return The history, null if none
+     */
+    public EventHistory history() {
+        return history;
+    }
+
+    private void record(int kind, NetworkStatus status, int transport, long networkId) {
+        if (history != null) {
+            history.record(kind, scheduler.now(), status, transport, networkId);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Reactive Streams {@link Publisher} of the states delivered by an event pipeline.</p>
+ * <p>Each subscription holds at most one undelivered state. Without demand, newer states
+ * replace the held one, so a slow subscriber only ever sees the latest state and nothing is
+ * queued. New subscribers get the last delivered state first.</p>
+ * <p>The stream is hot and infinite: {@link Subscriber#onComplete()} is never called, and
+ * {@link Subscriber#onError(Throwable)} only for an invalid request. The {@link Source} is
+ * attached on the first subscription and detached once the last one is cancelled. An attach
+ * racing with the detach of the previous last subscription may be reported before it, so
+ * sources should count rather than toggle.</p>
+ * <p>Published states are signalled on the executor given at construction, so the publishing
+ * thread's locks are not held while subscribers run and possibly cancel.</p>
+ */
+public final class StatePublisher implements Publisher<NetworkStatus>, StatusSink {
+    /**
+     * Upstream of the publisher, e.g a system registration
+     */
+    public interface Source {
+        /**
+         * Called when the first subscriber arrives
+         */
+        void attach();
+
+        /**
+         * Called when the last subscription is cancelled
+         */
+        void detach();
+    }
+
+    private static final StateSubscription[] EMPTY = new StateSubscription[0];
+
+    private final Source source;
+    private final Executor executor;
+    private volatile StateSubscription[] subscriptions = EMPTY;
+    private volatile NetworkStatus last;
+
+    /**
+     * Publisher signalling on the publishing thread
+     *
+     * @param source Upstream to attach while subscribed
+     */
+    public StatePublisher(Source source) {
+        this(Runnable::run, source);
+    }
+
+    /**
+     * @param executor Executor published states are signalled on
+     * @param source   Upstream to attach while subscribed
+     */
+    public StatePublisher(Executor executor, Source source) {
+        this.executor = executor;
+        this.source = source;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super NetworkStatus> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber must not be null");
+        }
+        final StateSubscription subscription = new StateSubscription(this, subscriber);
+        subscriber.onSubscribe(subscription);
+        final boolean first;
+        synchronized (this) {
+            if (subscription.cancelled) {
+                return;
+            }
+            final StateSubscription[] current = subscriptions;
+            final StateSubscription[] updated = new StateSubscription[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscription;
+            subscriptions = updated;
+            first = current.length == 0;
+        }
+        final NetworkStatus status = last;
+        if (status != null) {
+            subscription.offer(status);
+        }
+        if (first) {
+            source.attach();
+        }
+    }
+
+    /**
+     * Publishes a delivered state to every subscription
+     *
+     * @param status State
+     */
+    @Override
+    public void accept(NetworkStatus status) {
+        last = status;
+        for (StateSubscription subscription : subscriptions) {
+            subscription.offer(status);
+        }
+    }
+
+    /**
+     * @return Number of active subscriptions
+     */
+    public int subscriberCount() {
+        return subscriptions.length;
+    }
+
+    private void remove(StateSubscription subscription) {
+        synchronized (this) {
+            final StateSubscription[] current = subscriptions;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscription) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            if (current.length > 1) {
+                final StateSubscription[] updated = new StateSubscription[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+                subscriptions = updated;
+                return;
+            }
+            // The last state is kept for the next subscriber: once re-attached, upstream
+            // duplicate filtering drops the replay of an unchanged state
+            subscriptions = EMPTY;
+        }
+        source.detach();
+    }
+
+    /**
+     * Conflating subscription. Signals are serialized by a work-in-progress counter, so states
+     * offered from any thread reach the subscriber one at a time.
+     */
+    private static final class StateSubscription implements Subscription {
+        private final StatePublisher parent;
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Runnable drainTask = this::drain;
+        private final Subscriber<? super NetworkStatus> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicReference<NetworkStatus> latest = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        StateSubscription(StatePublisher parent, Subscriber<? super NetworkStatus> subscriber) {
+            this.parent = parent;
+            this.subscriber = subscriber;
+        }
+
+        void offer(NetworkStatus status) {
+            latest.set(status);
+            parent.executor.execute(drainTask);
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " states, must be positive");
+            } else {
+                long current;
+                do {
+                    current = requested.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                parent.remove(this);
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (cancelled) {
+                    latest.set(null);
+                    return;
+                }
+                final Throwable e = error;
+                if (e != null) {
+                    cancel();
+                    subscriber.onError(e);
+                    return;
+                }
+                final long demand = requested.get();
+                if (demand != 0) {
+                    final NetworkStatus status = latest.getAndSet(null);
+                    if (status != null) {
+                        if (demand != Long.MAX_VALUE) {
+                            requested.decrementAndGet();
+                        }
+                        subscriber.onNext(status);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * Receives the output of a {@link NetworkStateMachine}
+ *
+ * @param <N> Platform network handle type
+ */
+public interface StateSubscriber<N> {
+    /**
+     * Called when the aggregate state changes
+     *
+     * @param status    New state
+     * @param networkId Id of the network that caused the change, 0 if none
+     */
+    void onStatus(NetworkStatus status, long networkId);
+
+    /**
+     * Called when one matching network comes up
+     *
+     * @param networkId Network id
+     * @param network   Network handle
+     */
+    void onNetworkAvailable(long networkId, N network);
+
+    /**
+     * Called when one matching network is about to go down
+     *
+     * @param networkId   Network id
+     * @param network     Network handle
+     * @param maxMsToLive Time the network is expected to stay up, 0 if unknown
+     * @param replacement Another live matching network to move to, null if none yet
+     */
+    void onNetworkLosing(long networkId, N network, int maxMsToLive, N replacement);
+
+    /**
+     * Called when one matching network goes down
+     *
+     * @param networkId Network id
+     * @param network   Network handle
+     */
+    void onNetworkLost(long networkId, N network);
+}
@@ -0,0 +1,8 @@
+package lib.gintec_rdl.network_state.core;
+
+/**
+ * Receives states from a stage of the event pipeline
+ */
+public interface StatusSink {
+    void accept(NetworkStatus status);
+}
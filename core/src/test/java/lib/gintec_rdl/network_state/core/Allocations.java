@@ -0,0 +1,35 @@
+package lib.gintec_rdl.network_state.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures what a piece of code allocates with the per-thread allocation counter. Tests using it
+ * are skipped on JVMs without the counter.
+ */
+final class Allocations {
+    private Allocations() {
+    }
+
+    /**
+     * Runs the work twice, the first time to warm up so the measured run executes compiled code
+     *
+     * @param work Work to measure
+     * @return Bytes allocated by the calling thread during the second run
+     */
+    static long measure(Runnable work) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        final long threadId = Thread.currentThread().getId();
+
+        work.run();
+        final long before = threadBean.getThreadAllocatedBytes(threadId);
+        work.run();
+        return threadBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
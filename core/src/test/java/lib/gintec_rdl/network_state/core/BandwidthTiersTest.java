@@ -0,0 +1,60 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class BandwidthTiersTest {
+    private final BandwidthTiers tiers = new BandwidthTiers(10, 1000, 5000);
+
+    @Test
+    public void initialTierHasNoHysteresis() {
+        assertEquals(0, tiers.tierOf(999, -1));
+        assertEquals(1, tiers.tierOf(1000, -1));
+        assertEquals(2, tiers.tierOf(5000, -1));
+        assertEquals(3, tiers.count());
+    }
+
+    @Test
+    public void staysInTierWithinHysteresisBand() {
+        // Moving up from tier 0 needs 1100kbps, moving down from tier 1 needs < 900kbps
+        assertEquals(0, tiers.tierOf(1050, 0));
+        assertEquals(1, tiers.tierOf(1100, 0));
+        assertEquals(1, tiers.tierOf(950, 1));
+        assertEquals(0, tiers.tierOf(899, 1));
+        assertEquals(2, tiers.tierOf(20000, 0));
+        assertEquals(0, tiers.tierOf(10, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsortedBoundaries() {
+        new BandwidthTiers(10, 5000, 1000);
+    }
+
+    @Test
+    public void filterOnlyReportsTierAndFlagChanges() {
+        final CapabilitiesFilter filter = new CapabilitiesFilter(tiers);
+
+        assertNotNull(filter.update(1, 800, 100, true, true));
+        assertNull(filter.update(1, 1050, 120, true, true));
+        assertEquals(1, filter.update(1, 1200, 120, true, true).getDownstreamTier());
+        assertNotNull(filter.update(1, 1200, 120, false, true));
+        assertNull(filter.update(1, 1210, 121, false, true));
+
+        // Networks are tracked independently
+        assertNotNull(filter.update(2, 1210, 121, false, true));
+        filter.forget(1);
+        assertNotNull(filter.update(1, 1210, 121, false, true));
+    }
+
+    @Test
+    public void filterWithoutTiersReportsEveryChange() {
+        final CapabilitiesFilter filter = new CapabilitiesFilter(null);
+
+        assertNotNull(filter.update(1, 800, 100, true, true));
+        assertNull(filter.update(1, 800, 100, true, true));
+        assertNotNull(filter.update(1, 801, 100, true, true));
+    }
+}
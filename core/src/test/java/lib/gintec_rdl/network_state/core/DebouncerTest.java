@@ -0,0 +1,95 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DebouncerTest {
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<NetworkStatus> delivered = new ArrayList<>();
+
+    @Test
+    public void deliversOnlySettledState() {
+        final Debouncer debouncer = new Debouncer(scheduler, 100, 1000, delivered::add);
+
+        debouncer.submit(NetworkStatus.CONNECTING);
+        scheduler.advance(10);
+        debouncer.submit(NetworkStatus.AUTHENTICATING);
+        scheduler.advance(10);
+        debouncer.submit(NetworkStatus.OBTAINING_IP_ADDRESS);
+        scheduler.advance(10);
+        debouncer.submit(NetworkStatus.AVAILABLE);
+        scheduler.advance(99);
+        assertEquals(0, delivered.size());
+
+        scheduler.advance(1);
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), delivered);
+    }
+
+    @Test
+    public void maxLatencyCapsFlappingLink() {
+        final Debouncer debouncer = new Debouncer(scheduler, 100, 250, delivered::add);
+
+        // Flap every 50ms, never leaving a quiet window
+        for (int i = 0; i < 10; i++) {
+            debouncer.submit((i & 1) == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOSING);
+            scheduler.advance(50);
+        }
+
+        // Bursts are cut at 250ms, so two states went out over 500ms
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE, NetworkStatus.LOSING), delivered);
+    }
+
+    @Test
+    public void clearDropsPendingState() {
+        final Debouncer debouncer = new Debouncer(scheduler, 100, 1000, delivered::add);
+
+        debouncer.submit(NetworkStatus.AVAILABLE);
+        debouncer.clear();
+        scheduler.advance(1000);
+
+        assertEquals(0, delivered.size());
+    }
+
+    /**
+     * Single task scheduler with a manually advanced clock
+     */
+    private static final class ManualScheduler implements Scheduler {
+        private long now;
+        private Runnable task;
+        private long dueAt;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            this.task = task;
+            this.dueAt = now + delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            if (this.task == task) {
+                this.task = null;
+            }
+        }
+
+        void advance(long millis) {
+            final long target = now + millis;
+            while (task != null && dueAt <= target) {
+                now = dueAt;
+                final Runnable due = task;
+                task = null;
+                due.run();
+            }
+            now = target;
+        }
+    }
+}
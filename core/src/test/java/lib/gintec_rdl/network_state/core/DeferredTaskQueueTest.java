@@ -0,0 +1,108 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredTaskQueueTest {
+    private final List<Runnable> started = new ArrayList<>();
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    public void holdsTasksWhileOffline() {
+        final DeferredTaskQueue queue = new DeferredTaskQueue(Runnable::run, 4, 16);
+        queue.submit(task("a"), 0);
+        queue.submit(task("b"), 0);
+        assertEquals(2, queue.pendingCount());
+        assertEquals(0, ran.size());
+
+        queue.onConditions(true, false, true);
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertEquals(0, queue.pendingCount());
+    }
+
+    @Test
+    public void drainsInBoundedBatches() {
+        // Tasks only finish when the test runs them
+        final DeferredTaskQueue queue = new DeferredTaskQueue(started::add, 2, 16);
+        for (int i = 0; i < 5; i++) {
+            queue.submit(task("t" + i), 0);
+        }
+
+        queue.onConditions(true, false, true);
+        assertEquals(2, started.size());
+        assertEquals(2, queue.runningCount());
+
+        started.get(0).run();
+        assertEquals(3, started.size());
+        started.get(1).run();
+        started.get(2).run();
+        assertEquals(5, started.size());
+        assertEquals(2, queue.runningCount());
+        assertEquals(Arrays.asList("t0", "t1", "t2"), ran);
+    }
+
+    @Test
+    public void constrainedTasksWaitForConditions() {
+        final DeferredTaskQueue queue = new DeferredTaskQueue(Runnable::run, 4, 16);
+        queue.submit(task("upload"), DeferredTaskQueue.REQUIRE_UNMETERED);
+        queue.submit(task("sync"), DeferredTaskQueue.REQUIRE_VALIDATED);
+        queue.submit(task("ping"), 0);
+
+        // Metered and not yet validated
+        queue.onConditions(true, false, false);
+        assertEquals(Arrays.asList("ping"), ran);
+
+        queue.onConditions(true, false, true);
+        assertEquals(Arrays.asList("ping", "sync"), ran);
+
+        queue.onConditions(true, true, true);
+        assertEquals(Arrays.asList("ping", "sync", "upload"), ran);
+    }
+
+    @Test
+    public void rejectsTasksBeyondCapacity() {
+        final DeferredTaskQueue queue = new DeferredTaskQueue(Runnable::run, 1, 2);
+        assertTrue(queue.submit(task("a"), 0));
+        assertTrue(queue.submit(task("b"), 0));
+        assertFalse(queue.submit(task("c"), 0));
+
+        queue.clear();
+        queue.onConditions(true, true, true);
+        assertEquals(0, ran.size());
+    }
+
+    @Test
+    public void retriesTasksTheExecutorRejected() {
+        final boolean[] saturated = {true};
+        final DeferredTaskQueue queue = new DeferredTaskQueue(command -> {
+            if (saturated[0]) {
+                throw new RejectedExecutionException();
+            }
+            command.run();
+        }, 1, 16);
+        queue.submit(task("a"), 0);
+        queue.submit(task("b"), 0);
+
+        queue.onConditions(true, true, true);
+        assertEquals(0, ran.size());
+        assertEquals(0, queue.runningCount());
+        assertEquals(2, queue.pendingCount());
+
+        saturated[0] = false;
+        queue.onConditions(true, true, true);
+        assertEquals(Arrays.asList("a", "b"), ran);
+        assertEquals(0, queue.pendingCount());
+    }
+
+    private Runnable task(String name) {
+        return () -> ran.add(name);
+    }
+}
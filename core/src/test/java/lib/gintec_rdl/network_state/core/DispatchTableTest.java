@@ -0,0 +1,87 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DispatchTableTest {
+    private static final int EVENTS = 100_000;
+
+    private final int[] counts = new int[NetworkStatus.COUNT];
+
+    private DispatchTable directTable() {
+        final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+        actions[NetworkStatus.AVAILABLE.ordinal()] = () -> counts[NetworkStatus.AVAILABLE.ordinal()]++;
+        actions[NetworkStatus.LOST.ordinal()] = () -> counts[NetworkStatus.LOST.ordinal()]++;
+        return new DispatchTable(actions, Runnable::run);
+    }
+
+    @Test
+    public void dispatchesToStateAction() {
+        final DispatchTable table = directTable();
+
+        assertTrue(table.dispatch(NetworkStatus.AVAILABLE));
+        assertTrue(table.dispatch(NetworkStatus.LOST));
+        assertTrue(table.dispatch(NetworkStatus.AVAILABLE));
+        assertFalse(table.dispatch(NetworkStatus.LOSING));
+
+        assertEquals(2, counts[NetworkStatus.AVAILABLE.ordinal()]);
+        assertEquals(1, counts[NetworkStatus.LOST.ordinal()]);
+        assertEquals(0, counts[NetworkStatus.LOSING.ordinal()]);
+    }
+
+    @Test
+    public void recordsMetrics() {
+        final NetworkStatus[] slow = new NetworkStatus[1];
+        final DispatchMetrics metrics = new DispatchMetrics(5, (status, durationMillis) -> slow[0] = status);
+        final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+        actions[NetworkStatus.AVAILABLE.ordinal()] = () -> counts[NetworkStatus.AVAILABLE.ordinal()]++;
+        actions[NetworkStatus.LOST.ordinal()] = () -> {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final DispatchTable table = new DispatchTable(actions, Runnable::run, metrics);
+
+        table.dispatch(NetworkStatus.AVAILABLE);
+        table.dispatch(NetworkStatus.AVAILABLE);
+        assertEquals(null, slow[0]);
+        table.dispatch(NetworkStatus.LOST);
+        table.dispatch(NetworkStatus.LOSING);
+
+        assertEquals(2, metrics.count(NetworkStatus.AVAILABLE));
+        assertEquals(1, metrics.count(NetworkStatus.LOST));
+        assertEquals(0, metrics.count(NetworkStatus.LOSING));
+        assertEquals(3, metrics.callbackDuration().count());
+        assertEquals(3, metrics.queueLatency().count());
+        assertTrue(metrics.callbackDuration().percentile(100) >= 10_000_000L);
+        assertEquals(NetworkStatus.LOST, slow[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteTable() {
+        new DispatchTable(new Runnable[NetworkStatus.COUNT - 1], Runnable::run);
+    }
+
+    @Test
+    public void dispatchDoesNotAllocate() {
+        final DispatchTable table = directTable();
+
+        final long allocated = Allocations.measure(() -> flap(table));
+
+        // Allow for the bookkeeping of the measurement itself, which is far below one byte per event
+        assertTrue("Allocated " + allocated + " bytes for " + EVENTS + " events", allocated < EVENTS);
+        assertEquals(EVENTS / 2, counts[NetworkStatus.AVAILABLE.ordinal()]);
+    }
+
+    private void flap(DispatchTable table) {
+        counts[NetworkStatus.AVAILABLE.ordinal()] = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            table.dispatch((i & 1) == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOST);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventHistoryTest {
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(1, new EventHistory(1).capacity());
+        assertEquals(64, new EventHistory(64).capacity());
+        assertEquals(128, new EventHistory(65).capacity());
+    }
+
+    @Test
+    public void keepsMostRecentEntriesOldestFirst() {
+        final EventHistory history = new EventHistory(4);
+        for (int i = 0; i < 10; i++) {
+            history.record(EventHistory.KIND_RAW, 1000 + i, (i & 1) == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOST, 1, 100 + i);
+        }
+
+        final EventHistory.Entry[] entries = history.snapshot();
+        assertEquals(4, entries.length);
+        assertEquals(10, history.recorded());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(6 + i, entries[i].sequence);
+            assertEquals(1006 + i, entries[i].timestamp);
+            assertEquals(106 + i, entries[i].networkId);
+            assertEquals(1, entries[i].transport);
+            assertEquals(EventHistory.KIND_RAW, entries[i].kind);
+        }
+        assertEquals(NetworkStatus.AVAILABLE, entries[0].status);
+        assertEquals(NetworkStatus.LOST, entries[1].status);
+    }
+
+    @Test
+    public void readersNeverSeeTornEntries() throws InterruptedException {
+        final EventHistory history = new EventHistory(16);
+        final int writers = 4;
+        final int perWriter = 50_000;
+        final CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    // Every field derives from the same value so a torn entry is detectable
+                    history.record(EventHistory.KIND_DELIVERED, i, NetworkStatus.valueOf(i % NetworkStatus.COUNT), writer, i);
+                }
+                done.countDown();
+            }).start();
+        }
+        while (done.getCount() > 0) {
+            for (EventHistory.Entry entry : history.snapshot()) {
+                assertEquals(entry.timestamp, entry.networkId);
+                assertEquals(NetworkStatus.valueOf((int) (entry.timestamp % NetworkStatus.COUNT)), entry.status);
+                assertTrue(entry.transport < writers);
+            }
+        }
+        assertEquals(writers * perWriter, history.recorded());
+    }
+}
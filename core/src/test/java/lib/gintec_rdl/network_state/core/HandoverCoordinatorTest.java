@@ -0,0 +1,64 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.trace.VirtualScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HandoverCoordinatorTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final List<String> migrations = new ArrayList<>();
+    private final HandoverCoordinator<String> coordinator = new HandoverCoordinator<>(scheduler, 200,
+        (losing, replacement, budget) -> migrations.add(losing + ">" + replacement + " " + budget));
+
+    @Test
+    public void migratesRightAwayToKnownReplacement() {
+        coordinator.onLosing(1, "wifi", 3000, "cell");
+
+        assertEquals(Arrays.asList("wifi>cell 2800"), migrations);
+        assertFalse(coordinator.isPending());
+    }
+
+    @Test
+    public void waitsForReplacementWithinBudget() {
+        coordinator.onLosing(1, "wifi", 3000, null);
+        assertTrue(coordinator.isPending());
+
+        scheduler.advanceTo(1000);
+        coordinator.onAvailable(1, "wifi");
+        coordinator.onAvailable(2, "cell");
+
+        assertEquals(Arrays.asList("wifi>cell 1800"), migrations);
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void dropsHandoverWithoutTimeLeft() {
+        coordinator.onLosing(1, "wifi", 3000, null);
+        scheduler.advanceTo(2800);
+        coordinator.onAvailable(2, "cell");
+
+        // Less than the margin to live
+        coordinator.onLosing(2, "cell", 100, "wifi");
+
+        assertEquals(Collections.emptyList(), migrations);
+    }
+
+    @Test
+    public void lossCancelsPendingHandover() {
+        coordinator.onLosing(1, "wifi", 3000, null);
+        coordinator.onLost(1);
+        coordinator.onAvailable(2, "cell");
+
+        assertEquals(Collections.emptyList(), migrations);
+        assertEquals(0, scheduler.pending());
+    }
+}
@@ -0,0 +1,41 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LiveNetworkSetTest {
+    private final LiveNetworkSet<String> set = new LiveNetworkSet<>();
+
+    @Test
+    public void tracksNetworksById() {
+        assertTrue(set.add(100, "wifi"));
+        assertTrue(set.add(101, "vpn"));
+        assertFalse(set.add(100, "wifi again"));
+
+        assertEquals(2, set.size());
+        assertEquals("wifi again", set.get(100));
+
+        assertEquals("wifi again", set.remove(100));
+        assertNull(set.remove(100));
+        assertEquals(1, set.size());
+        assertEquals("vpn", set.handleAt(0));
+    }
+
+    @Test
+    public void growsBeyondInitialCapacity() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(set.add(i, "net" + i));
+        }
+        assertEquals(20, set.size());
+        for (int i = 0; i < 20; i++) {
+            assertTrue(set.contains(i));
+        }
+        set.clear();
+        assertEquals(0, set.size());
+        assertFalse(set.contains(3));
+    }
+}
@@ -0,0 +1,172 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.trace.PipelineSubscriber;
+import lib.gintec_rdl.network_state.core.trace.VirtualScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NetworkStateMachineTest {
+    private final NetworkStateMachine<String> machine = new NetworkStateMachine<>(false, null);
+
+    @Test
+    public void aggregatesMultipleNetworks() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        machine.subscribe(subscriber);
+
+        machine.onAvailable(1, "wifi");
+        machine.onAvailable(2, "vpn");
+        // Still connected through the VPN
+        machine.onLosing(1, "wifi");
+        machine.onLost(1);
+        machine.onLosing(2, "vpn");
+        machine.onLost(2);
+
+        assertEquals(Arrays.asList("+wifi", "AVAILABLE", "+vpn", "-wifi", "LOSING", "-vpn", "LOST"),
+            subscriber.events);
+        assertEquals(0, machine.liveNetworkCount());
+    }
+
+    @Test
+    public void replacementAfterLosingRestoresAvailable() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        machine.subscribe(subscriber);
+
+        machine.onAvailable(1, "wifi");
+        machine.onLosing(1, "wifi", 3000);
+        machine.onAvailable(2, "cell");
+        machine.onLost(1);
+
+        assertEquals(Arrays.asList("+wifi", "AVAILABLE", "LOSING", "+cell", "AVAILABLE", "-wifi"),
+            subscriber.events);
+        assertEquals(NetworkStatus.AVAILABLE, machine.status());
+        assertEquals(1, machine.liveNetworkCount());
+    }
+
+    @Test
+    public void stateMovesToReplacementOfLosingNetwork() {
+        final List<String> transitions = new ArrayList<>();
+        final NetworkStateMachine<String> tracked = new NetworkStateMachine<>(false,
+            (status, network) -> transitions.add(status + " " + network));
+
+        tracked.onAvailable(1, "wifi");
+        tracked.onAvailable(2, "vpn");
+        tracked.onLost(2);
+        tracked.onLosing(1, "wifi", 3000);
+        tracked.onAvailable(3, "cell");
+        tracked.onLost(1);
+
+        assertEquals(Arrays.asList("AVAILABLE wifi", "AVAILABLE wifi", "AVAILABLE wifi", "LOSING wifi",
+            "AVAILABLE cell", "AVAILABLE cell"), transitions);
+    }
+
+    @Test
+    public void replaysStateToLateSubscribers() {
+        machine.subscribe(new RecordingSubscriber());
+        machine.onAvailable(1, "wifi");
+        machine.onAvailable(2, "cell");
+
+        final RecordingSubscriber late = new RecordingSubscriber();
+        machine.subscribe(late);
+        assertEquals(Arrays.asList("AVAILABLE", "+wifi", "+cell"), late.events);
+        assertEquals(1, machine.unsubscribe(late));
+    }
+
+    @Test
+    public void singleNetworkReplacesPrevious() {
+        final List<String> transitions = new ArrayList<>();
+        final NetworkStateMachine<String> defaultNetwork = new NetworkStateMachine<>(true,
+            (status, network) -> transitions.add(status + " " + network));
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        defaultNetwork.subscribe(subscriber);
+
+        defaultNetwork.onAvailable(1, "wifi");
+        defaultNetwork.onAvailable(2, "cell");
+
+        assertEquals(Arrays.asList("+wifi", "AVAILABLE", "-wifi", "+cell", "AVAILABLE"), subscriber.events);
+        assertEquals(Arrays.asList("AVAILABLE wifi", "AVAILABLE cell"), transitions);
+        assertEquals(1, defaultNetwork.liveNetworkCount());
+    }
+
+    @Test
+    public void initialDeadlineOnlySettlesUnknownState() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        machine.subscribe(subscriber);
+
+        assertTrue(machine.onInitialDeadline());
+        assertFalse(machine.onInitialDeadline());
+        machine.onAvailable(1, "wifi");
+
+        assertEquals(Arrays.asList("NOT_AVAILABLE", "+wifi", "AVAILABLE"), subscriber.events);
+    }
+
+    @Test
+    public void losingCarriesDeadlineAndReplacement() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        machine.subscribe(subscriber);
+
+        machine.onAvailable(1, "wifi");
+        machine.onAvailable(2, "cell");
+        machine.onLosing(1, "wifi", 3000);
+        machine.onLost(1);
+        machine.onLosing(2, "cell", 500);
+        // Unknown networks are not reported
+        machine.onLosing(3, "vpn", 500);
+
+        assertEquals(Arrays.asList("wifi 3000 cell", "cell 500 null"), subscriber.losing);
+    }
+
+    @Test
+    public void eventPathDoesNotAllocate() {
+        final int events = 100_000;
+        final long[] delivered = new long[1];
+        final PipelineSubscriber<String> subscriber = new PipelineSubscriber<>(
+            PipelineSubscriber.everyState(() -> delivered[0]++), new VirtualScheduler(), 0, 0);
+        machine.subscribe(subscriber);
+
+        // Network events through the machine, the spec's pipeline and its dispatch table. Platform
+        // listeners add one immutable snapshot per state change on top.
+        final long allocated = Allocations.measure(() -> {
+            for (int i = 0; i < events / 2; i++) {
+                machine.onAvailable(1, "wifi");
+                machine.onLost(1);
+            }
+        });
+
+        assertTrue("Allocated " + allocated + " bytes for " + events + " events", allocated < events);
+        assertEquals(2L * events, delivered[0]);
+        assertEquals(2L * events, subscriber.networkEvents());
+    }
+
+    private static final class RecordingSubscriber implements StateSubscriber<String> {
+        final List<String> events = new ArrayList<>();
+        final List<String> losing = new ArrayList<>();
+
+        @Override
+        public void onStatus(NetworkStatus status, long networkId) {
+            events.add(status.name());
+        }
+
+        @Override
+        public void onNetworkAvailable(long networkId, String network) {
+            events.add("+" + network);
+        }
+
+        @Override
+        public void onNetworkLosing(long networkId, String network, int maxMsToLive, String replacement) {
+            losing.add(network + " " + maxMsToLive + " " + replacement);
+        }
+
+        @Override
+        public void onNetworkLost(long networkId, String network) {
+            events.add("-" + network);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResolutionCacheTest {
+    private final ManualClock clock = new ManualClock();
+    private final ResolutionCache cache = new ResolutionCache(clock, 1000, 2);
+
+    @Test
+    public void entriesExpireAfterTtl() throws UnknownHostException {
+        final InetAddress[] addresses = addresses("10.0.0.1");
+        cache.track(1);
+        cache.put(1, "example.com", addresses);
+
+        clock.now = 999;
+        assertArrayEquals(addresses, cache.get(1, "example.com"));
+        assertNull(cache.get(2, "example.com"));
+
+        clock.now = 1000;
+        assertNull(cache.get(1, "example.com"));
+    }
+
+    @Test
+    public void ignoresResultsForUntrackedNetworks() throws UnknownHostException {
+        cache.put(1, "example.com", addresses("10.0.0.1"));
+        assertNull(cache.get(1, "example.com"));
+
+        // A lookup completing after the network was lost
+        cache.track(1);
+        cache.invalidate(1);
+        cache.put(1, "example.com", addresses("10.0.0.1"));
+        assertNull(cache.get(1, "example.com"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedHosts() throws UnknownHostException {
+        cache.track(1);
+        cache.put(1, "a", addresses("10.0.0.1"));
+        cache.put(1, "b", addresses("10.0.0.2"));
+        cache.get(1, "a");
+        cache.put(1, "c", addresses("10.0.0.3"));
+
+        assertNotNull(cache.get(1, "a"));
+        assertNull(cache.get(1, "b"));
+        assertNotNull(cache.get(1, "c"));
+    }
+
+    private static InetAddress[] addresses(String address) throws UnknownHostException {
+        return new InetAddress[]{InetAddress.getByName(address)};
+    }
+
+    private static final class ManualClock implements Scheduler {
+        long now;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package lib.gintec_rdl.network_state.core;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.trace.VirtualScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatePublisherTest {
+    private int attached;
+    private final StatePublisher.Source source = new StatePublisher.Source() {
+        @Override
+        public void attach() {
+            attached++;
+        }
+
+        @Override
+        public void detach() {
+            attached--;
+        }
+    };
+    private final StatePublisher publisher = new StatePublisher(source);
+
+    @Test
+    public void slowSubscriberOnlySeesLatestState() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        publisher.accept(NetworkStatus.CONNECTING);
+        publisher.accept(NetworkStatus.OBTAINING_IP_ADDRESS);
+        publisher.accept(NetworkStatus.AVAILABLE);
+        assertEquals(0, subscriber.states.size());
+
+        subscriber.subscription.request(1);
+        publisher.accept(NetworkStatus.LOSING);
+        publisher.accept(NetworkStatus.LOST);
+        subscriber.subscription.request(5);
+        publisher.accept(NetworkStatus.AVAILABLE);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE, NetworkStatus.LOST, NetworkStatus.AVAILABLE),
+            subscriber.states);
+    }
+
+    @Test
+    public void lateSubscriberGetsLastState() {
+        publisher.subscribe(new RecordingSubscriber());
+        publisher.accept(NetworkStatus.AVAILABLE);
+
+        final RecordingSubscriber late = new RecordingSubscriber();
+        publisher.subscribe(late);
+        late.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), late.states);
+    }
+
+    @Test
+    public void resubscriberGetsStateUnchangedWhileDetached() {
+        // Upstream drops the replay of the unchanged state on re-attach
+        final StatePipeline pipeline = new StatePipeline(new DispatchTable(new Runnable[NetworkStatus.COUNT],
+            Runnable::run), new VirtualScheduler(), 0, 0, true, null, publisher);
+        final RecordingSubscriber first = new RecordingSubscriber();
+        publisher.subscribe(first);
+        first.subscription.request(Long.MAX_VALUE);
+        pipeline.onEvent(NetworkStatus.AVAILABLE, 1, 1);
+        first.subscription.cancel();
+
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        second.subscription.request(Long.MAX_VALUE);
+        pipeline.onEvent(NetworkStatus.AVAILABLE, 1, 1);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), first.states);
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), second.states);
+        assertEquals(1, attached);
+    }
+
+    @Test
+    public void lastCancelDetachesSource() {
+        final RecordingSubscriber first = new RecordingSubscriber();
+        final RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(first);
+        publisher.subscribe(second);
+        assertEquals(1, attached);
+
+        first.subscription.cancel();
+        assertEquals(1, attached);
+        second.subscription.cancel();
+        second.subscription.cancel();
+        assertEquals(0, attached);
+        assertEquals(0, publisher.subscriberCount());
+    }
+
+    @Test
+    public void signalsOnExecutor() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final StatePublisher deferred = new StatePublisher(tasks::add, source);
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        deferred.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        deferred.accept(NetworkStatus.AVAILABLE);
+        assertEquals(0, subscriber.states.size());
+
+        for (Runnable task : tasks) {
+            task.run();
+        }
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), subscriber.states);
+    }
+
+    @Test
+    public void invalidRequestSignalsError() {
+        final RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertEquals(0, attached);
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<NetworkStatus> {
+        final List<NetworkStatus> states = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(NetworkStatus status) {
+            states.add(status);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package lib.gintec_rdl.network_state.core.trace;
+
+import java.util.Arrays;
+
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+/**
+ * <p>Immutable, timestamped sequence of connectivity events as the platform would report them.</p>
+ * <p>Per-network events mirror {@code ConnectivityManager.NetworkCallback}, {@link #STATE}
+ * events mirror the aggregate state carried by legacy {@code CONNECTIVITY_ACTION} broadcasts.
+ * Traces are built synthetically or parsed from a recorded text form, one event per line:</p>
+ * <pre>
+ * # millis event [network id | state]
+ * 0 available 100
+ * 1500 losing 100
+ * 1530 lost 100
+ * 2000 unavailable
+ * 2500 state CONNECTING
+ * </pre>
+ */
+public final class ConnectivityTrace {
+    public static final int AVAILABLE = 0;
+    public static final int LOSING = 1;
+    public static final int LOST = 2;
+    public static final int UNAVAILABLE = 3;
+    public static final int STATE = 4;
+
+    private static final String[] NAMES = {"available", "losing", "lost", "unavailable", "state"};
+
+    private final long[] times;
+    private final int[] kinds;
+    private final long[] networkIds;
+    private final NetworkStatus[] states;
+
+    private ConnectivityTrace(Builder builder) {
+        this.times = Arrays.copyOf(builder.times, builder.size);
+        this.kinds = Arrays.copyOf(builder.kinds, builder.size);
+        this.networkIds = Arrays.copyOf(builder.networkIds, builder.size);
+        this.states = Arrays.copyOf(builder.states, builder.size);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long timeAt(int index) {
+        return times[index];
+    }
+
+    public int kindAt(int index) {
+        return kinds[index];
+    }
+
+    public long networkIdAt(int index) {
+        return networkIds[index];
+    }
+
+    public NetworkStatus stateAt(int index) {
+        return states[index];
+    }
+
+    /**
+     * @return Time of the last event, 0 for an empty trace
+     */
+    public long duration() {
+        return times.length > 0 ? times[times.length - 1] : 0;
+    }
+
+    /**
+     * Wi-Fi link bouncing up and down, e.g at the edge of an access point's range
+     *
+     * @param hz             Up and down cycles per second
+     * @param durationMillis Length of the trace
+     * @return The trace
+     */
+    public static ConnectivityTrace wifiFlapping(int hz, long durationMillis) {
+        final Builder builder = new Builder();
+        final long period = 1000 / hz;
+        for (long t = 0; t + period / 2 < durationMillis; t += period) {
+            builder.at(t).available(1)
+                .at(t + period / 2).lost(1);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Cellular coming up under a fading Wi-Fi network, which is lost after its linger time
+     *
+     * @return The trace
+     */
+    public static ConnectivityTrace cellularHandover() {
+        return new Builder()
+            .at(0).available(1)
+            .at(5000).available(2)
+            .at(5020).losing(1)
+            .at(35020).lost(1)
+            .build();
+    }
+
+    /**
+     * Wi-Fi losing before cellular comes up to replace it, then lost after its linger time
+     *
+     * @return The trace
+     */
+    public static ConnectivityTrace cellularHandoverAfterLosing() {
+        return new Builder()
+            .at(0).available(1)
+            .at(5000).losing(1)
+            .at(5020).available(2)
+            .at(35020).lost(1)
+            .build();
+    }
+
+    /**
+     * VPN repeatedly connected and disconnected over an underlying Wi-Fi network
+     *
+     * @param cycles       Number of connect/disconnect cycles
+     * @param periodMillis Duration of one cycle
+     * @return The trace
+     */
+    public static ConnectivityTrace vpnUpDown(int cycles, long periodMillis) {
+        final Builder builder = new Builder().at(0).available(1);
+        for (int i = 0; i < cycles; i++) {
+            final long t = 100 + i * periodMillis;
+            builder.at(t).available(3)
+                .at(t + periodMillis / 2).lost(3);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses the text form described in the class documentation
+     *
+     * @param text Trace text
+     * @return The trace
+     */
+    public static ConnectivityTrace parse(String text) {
+        final Builder builder = new Builder();
+        final String[] lines = text.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            final String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            final int kind = Arrays.asList(NAMES).indexOf(fields[1]);
+            if (kind < 0 || fields.length != (kind == UNAVAILABLE ? 2 : 3)) {
+                throw new IllegalArgumentException("Invalid trace line " + (i + 1) + ": " + line);
+            }
+            builder.add(Long.parseLong(fields[0]), kind,
+                kind < UNAVAILABLE ? Long.parseLong(fields[2]) : 0,
+                kind == STATE ? NetworkStatus.valueOf(fields[2]) : null);
+        }
+        return builder.build();
+    }
+
+    public static final class Builder {
+        private long[] times = new long[16];
+        private int[] kinds = new int[16];
+        private long[] networkIds = new long[16];
+        private NetworkStatus[] states = new NetworkStatus[16];
+        private int size;
+        private long time;
+
+        /**
+         * @param millis Time of the following events, in milliseconds from the trace start
+         * @return .
+         */
+        public Builder at(long millis) {
+            this.time = millis;
+            return this;
+        }
+
+        public Builder available(long networkId) {
+            return add(time, AVAILABLE, networkId, null);
+        }
+
+        public Builder losing(long networkId) {
+            return add(time, LOSING, networkId, null);
+        }
+
+        public Builder lost(long networkId) {
+            return add(time, LOST, networkId, null);
+        }
+
+        public Builder unavailable() {
+            return add(time, UNAVAILABLE, 0, null);
+        }
+
+        public Builder state(NetworkStatus status) {
+            return add(time, STATE, 0, status);
+        }
+
+        private Builder add(long time, int kind, long networkId, NetworkStatus state) {
+            if (size > 0 && time < times[size - 1]) {
+                throw new IllegalArgumentException("Events must be in time order");
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                kinds = Arrays.copyOf(kinds, size * 2);
+                networkIds = Arrays.copyOf(networkIds, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            times[size] = time;
+            kinds[size] = kind;
+            networkIds[size] = networkId;
+            states[size] = state;
+            size++;
+            return this;
+        }
+
+        public ConnectivityTrace build() {
+            return new ConnectivityTrace(this);
+        }
+    }
+}
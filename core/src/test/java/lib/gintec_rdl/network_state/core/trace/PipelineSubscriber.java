@@ -0,0 +1,69 @@
+package lib.gintec_rdl.network_state.core.trace;
+
+import lib.gintec_rdl.network_state.core.DispatchTable;
+import lib.gintec_rdl.network_state.core.EventHistory;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+import lib.gintec_rdl.network_state.core.Scheduler;
+import lib.gintec_rdl.network_state.core.StatePipeline;
+import lib.gintec_rdl.network_state.core.StateSubscriber;
+
+/**
+ * Subscriber standing in for a spec: states go through a pipeline of its own, with duplicate
+ * filtering and history like a spec's, and network events are counted. Allocation free unless
+ * the actions allocate.
+ *
+ * @param <N> Network handle type
+ */
+public final class PipelineSubscriber<N> implements StateSubscriber<N> {
+    private final StatePipeline pipeline;
+    private long networkEvents;
+
+    /**
+     * @param actions          Actions indexed by {@link NetworkStatus#ordinal()}, run directly
+     * @param scheduler        Scheduler for debouncing and history timestamps
+     * @param debounceMillis   Debounce quiet window, 0 to disable debouncing
+     * @param maxLatencyMillis Debounce max latency
+     */
+    public PipelineSubscriber(Runnable[] actions, Scheduler scheduler, long debounceMillis, long maxLatencyMillis) {
+        this.pipeline = new StatePipeline(new DispatchTable(actions, Runnable::run), scheduler, debounceMillis,
+            maxLatencyMillis, true, new EventHistory(32));
+    }
+
+    /**
+     * @param action Action run for every state
+     * @return Table running the action for every state
+     */
+    public static Runnable[] everyState(Runnable action) {
+        final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = action;
+        }
+        return actions;
+    }
+
+    /**
+     * @return Number of network available and lost events received
+     */
+    public long networkEvents() {
+        return networkEvents;
+    }
+
+    @Override
+    public void onStatus(NetworkStatus status, long networkId) {
+        pipeline.onEvent(status, 1, networkId);
+    }
+
+    @Override
+    public void onNetworkAvailable(long networkId, N network) {
+        networkEvents++;
+    }
+
+    @Override
+    public void onNetworkLosing(long networkId, N network, int maxMsToLive, N replacement) {
+    }
+
+    @Override
+    public void onNetworkLost(long networkId, N network) {
+        networkEvents++;
+    }
+}
@@ -0,0 +1,146 @@
+package lib.gintec_rdl.network_state.core.trace;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReplayTest {
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final NetworkStateMachine<Long> machine = new NetworkStateMachine<>(false, null);
+    private final TraceReplayer replayer = new TraceReplayer(scheduler, machine);
+    /**
+     * States delivered to the spec subscribed with {@link #subscribe}
+     */
+    private final List<NetworkStatus> delivered = new ArrayList<>();
+
+    @Test
+    public void wifiFlappingDeliversEveryTransitionWithoutDebounce() {
+        final PipelineSubscriber<Long> spec = subscribe(0, 0);
+
+        assertEquals(100, replayer.replay(ConnectivityTrace.wifiFlapping(50, 1000), 1));
+
+        assertEquals(100, delivered.size());
+        for (int i = 0; i < delivered.size(); i++) {
+            assertEquals((i & 1) == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOST, delivered.get(i));
+        }
+        assertEquals(100, spec.networkEvents());
+    }
+
+    @Test
+    public void wifiFlappingIsCappedByDebounceMaxLatency() {
+        subscribe(100, 500);
+
+        // 50 Hz recorded, replayed at 100 Hz for 2 seconds
+        replayer.replay(ConnectivityTrace.wifiFlapping(50, 4000), 2);
+        assertTrue("Delivered " + delivered, delivered.size() <= 2000 / 500);
+
+        replayer.settle(100);
+        assertEquals(NetworkStatus.LOST, delivered.get(delivered.size() - 1));
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void cellularHandoverStaysAvailable() {
+        final PipelineSubscriber<Long> spec = subscribe(0, 0);
+
+        replayer.replay(ConnectivityTrace.cellularHandover(), 1);
+
+        // Wi-Fi losing and lost while cellular is up is not a state change
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), delivered);
+        assertEquals(3, spec.networkEvents());
+        assertEquals(1, machine.liveNetworkCount());
+    }
+
+    @Test
+    public void cellularHandoverAfterLosingRecovers() {
+        subscribe(0, 0);
+
+        replayer.replay(ConnectivityTrace.cellularHandoverAfterLosing(), 1);
+
+        // Cellular coming up ends the losing state, Wi-Fi going down then changes nothing
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE, NetworkStatus.LOSING, NetworkStatus.AVAILABLE),
+            delivered);
+        assertEquals(NetworkStatus.AVAILABLE, machine.status());
+        assertEquals(1, machine.liveNetworkCount());
+    }
+
+    @Test
+    public void vpnUpDownOnlyReportsNetworks() {
+        final PipelineSubscriber<Long> spec = subscribe(0, 0);
+
+        replayer.replay(ConnectivityTrace.vpnUpDown(10, 1000), 1);
+
+        assertEquals(Arrays.asList(NetworkStatus.AVAILABLE), delivered);
+        assertEquals(21, spec.networkEvents());
+    }
+
+    @Test
+    public void legacyBroadcastsDropDuplicates() {
+        subscribe(0, 0);
+
+        replayer.replay(ConnectivityTrace.parse(""
+            + "# Recorded CONNECTIVITY_ACTION states\n"
+            + "0 state CONNECTING\n"
+            + "10 state CONNECTING\n"
+            + "20 state OBTAINING_IP_ADDRESS\n"
+            + "40 state AVAILABLE\n"
+            + "40 state AVAILABLE\n"
+            + "900 state LOST\n"), 1);
+
+        assertEquals(Arrays.asList(NetworkStatus.CONNECTING, NetworkStatus.OBTAINING_IP_ADDRESS,
+            NetworkStatus.AVAILABLE, NetworkStatus.LOST), delivered);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidTrace() {
+        ConnectivityTrace.parse("0 lost\n");
+    }
+
+    @Test
+    public void soakDeliversEveryEvent() {
+        final long[] counted = new long[1];
+        final List<PipelineSubscriber<Long>> specs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final PipelineSubscriber<Long> spec = new PipelineSubscriber<>(
+                PipelineSubscriber.everyState(() -> counted[0]++), new VirtualScheduler(), 0, 0);
+            specs.add(spec);
+            machine.subscribe(spec);
+        }
+        subscribe(0, 0);
+        final ConnectivityTrace trace = ConnectivityTrace.wifiFlapping(50, 60000);
+
+        final int events = replayer.replay(trace, 1, 200);
+
+        // Every event is one network event and one state change, throughput and allocation are
+        // measured by FlappingSoakBenchmark
+        assertEquals((long) specs.size() * events, counted[0]);
+        for (PipelineSubscriber<Long> spec : specs) {
+            assertEquals(events, spec.networkEvents());
+        }
+        assertEquals(events, delivered.size());
+        for (int i = 0; i < events; i++) {
+            assertEquals(i % 2 == 0 ? NetworkStatus.AVAILABLE : NetworkStatus.LOST, delivered.get(i));
+        }
+        assertEquals(0, machine.liveNetworkCount());
+    }
+
+    private PipelineSubscriber<Long> subscribe(long debounceMillis, long maxLatencyMillis) {
+        final Runnable[] actions = new Runnable[NetworkStatus.COUNT];
+        for (int i = 0; i < actions.length; i++) {
+            final NetworkStatus status = NetworkStatus.valueOf(i);
+            actions[i] = () -> delivered.add(status);
+        }
+        final PipelineSubscriber<Long> spec = new PipelineSubscriber<>(actions, scheduler, debounceMillis,
+            maxLatencyMillis);
+        machine.subscribe(spec);
+        return spec;
+    }
+}
@@ -0,0 +1,92 @@
+package lib.gintec_rdl.network_state.core.trace;
+
+import lib.gintec_rdl.network_state.core.NetworkStateMachine;
+import lib.gintec_rdl.network_state.core.NetworkStatus;
+
+/**
+ * <p>Fake connectivity source replaying {@link ConnectivityTrace}s into a
+ * {@link NetworkStateMachine}, the logic shared by the v21 and legacy listeners.</p>
+ * <p>Time runs on a {@link VirtualScheduler}, so debouncing behaves as on a device while a trace
+ * of minutes replays as fast as the pipeline allows. The rate is scaled by a speed factor, e.g
+ * 2 replays a 50 Hz trace at 100 Hz.</p>
+ */
+public final class TraceReplayer {
+    private final VirtualScheduler scheduler;
+    private final NetworkStateMachine<Long> machine;
+
+    /**
+     * @param scheduler Scheduler shared with the pipelines under test
+     * @param machine   Machine to feed, with network handles being the network ids
+     */
+    public TraceReplayer(VirtualScheduler scheduler, NetworkStateMachine<Long> machine) {
+        this.scheduler = scheduler;
+        this.machine = machine;
+    }
+
+    /**
+     * Replays the trace once, starting at the current virtual time
+     *
+     * @param trace Trace to replay
+     * @param speed Rate multiplier, 1 for the recorded rate
+     * @return Number of events replayed
+     */
+    public int replay(ConnectivityTrace trace, double speed) {
+        return replay(trace, speed, 1);
+    }
+
+    /**
+     * Replays the trace back to back, e.g for soak tests
+     *
+     * @param trace       Trace to replay
+     * @param speed       Rate multiplier, 1 for the recorded rate
+     * @param repetitions Number of times to replay the trace
+     * @return Number of events replayed
+     */
+    public int replay(ConnectivityTrace trace, double speed, int repetitions) {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("Speed must be positive");
+        }
+        // Repetitions are one event period apart, so the last and first events do not collide
+        final long gap = trace.size() > 1 ? trace.duration() / (trace.size() - 1) : 1;
+        for (int r = 0; r < repetitions; r++) {
+            final long origin = scheduler.now();
+            for (int i = 0; i < trace.size(); i++) {
+                scheduler.advanceTo(origin + (long) (trace.timeAt(i) / speed));
+                apply(trace, i);
+            }
+            scheduler.advanceTo(scheduler.now() + Math.max(1, (long) (gap / speed)));
+        }
+        return trace.size() * repetitions;
+    }
+
+    /**
+     * Lets pending debounced states through
+     *
+     * @param millis Virtual time to let pass
+     */
+    public void settle(long millis) {
+        scheduler.advanceTo(scheduler.now() + millis);
+    }
+
+    private void apply(ConnectivityTrace trace, int index) {
+        final long id = trace.networkIdAt(index);
+        switch (trace.kindAt(index)) {
+            case ConnectivityTrace.AVAILABLE:
+                machine.onAvailable(id, id);
+                break;
+            case ConnectivityTrace.LOSING:
+                machine.onLosing(id, id);
+                break;
+            case ConnectivityTrace.LOST:
+                machine.onLost(id);
+                break;
+            case ConnectivityTrace.UNAVAILABLE:
+                machine.onUnavailable();
+                break;
+            default:
+                final NetworkStatus state = trace.stateAt(index);
+                machine.onState(state, 0);
+                break;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package lib.gintec_rdl.network_state.core.trace;
+
+import java.util.Arrays;
+
+import lib.gintec_rdl.network_state.core.Scheduler;
+
+/**
+ * Scheduler on a virtual clock, so traces spanning minutes replay in milliseconds. Tasks run in
+ * due time order when the clock is advanced past them.
+ */
+public final class VirtualScheduler implements Scheduler {
+    private Runnable[] tasks = new Runnable[8];
+    private long[] dueTimes = new long[8];
+    private int size;
+    private long now;
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        if (size == tasks.length) {
+            tasks = Arrays.copyOf(tasks, size * 2);
+            dueTimes = Arrays.copyOf(dueTimes, size * 2);
+        }
+        tasks[size] = task;
+        dueTimes[size] = now + delayMillis;
+        size++;
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (tasks[i] == task) {
+                removeAt(i);
+            }
+        }
+    }
+
+    /**
+     * Moves the clock forward, running every task due until then
+     *
+     * @param time Target time, ignored if in the past
+     */
+    public void advanceTo(long time) {
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < size; i++) {
+                if (dueTimes[i] <= time && (next < 0 || dueTimes[i] < dueTimes[next])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = Math.max(now, dueTimes[next]);
+            final Runnable task = tasks[next];
+            removeAt(next);
+            task.run();
+        }
+        now = Math.max(now, time);
+    }
+
+    /**
+     * @return Number of pending tasks
+     */
+    public int pending() {
+        return size;
+    }
+
+    private void removeAt(int index) {
+        size--;
+        tasks[index] = tasks[size];
+        dueTimes[index] = dueTimes[size];
+        tasks[size] = null;
+    }
+}